@@ -0,0 +1,74 @@
+#!/bin/sh
+# Compile the program, and build and run its tests and benchmarks, without a
+# build tool. Dependencies are downloaded from Maven Central into lib/ once.
+#
+#   ./run.sh compile              compile the program into build/main
+#   ./run.sh test                 run the unit tests
+#   ./run.sh bench [JMH options]  run the JMH benchmarks
+#   ./run.sh loadtest [options]   run LoadTest, see its usage
+set -e
+cd "$(dirname "$0")"
+
+REPOSITORY=https://repo1.maven.org/maven2
+LIB=lib
+BUILD=build
+GSON_VERSION=2.13.1
+JMH_VERSION=1.37
+CP=
+
+# fetch GROUP ARTIFACT VERSION: download a jar unless it is there, and add it
+# to CP
+fetch() {
+	jar="$LIB/$2-$3.jar"
+	if [ ! -f "$jar" ]; then
+		mkdir -p "$LIB"
+		echo "Downloading $2 $3"
+		curl -fsSL -o "$jar.part" "$REPOSITORY/$(echo "$1" | tr . /)/$2/$3/$2-$3.jar"
+		mv "$jar.part" "$jar"
+	fi
+	CP="${CP:+$CP:}$jar"
+}
+
+compile_benchmark() {
+	fetch com.google.code.gson gson $GSON_VERSION
+	fetch org.openjdk.jmh jmh-core $JMH_VERSION
+	fetch org.openjdk.jmh jmh-generator-annprocess $JMH_VERSION
+	fetch net.sf.jopt-simple jopt-simple 5.0.4
+	fetch org.apache.commons commons-math3 3.6.1
+	rm -rf "$BUILD/benchmark"
+	mkdir -p "$BUILD/benchmark"
+	# the JMH annotation processor generates the benchmark harness
+	javac -encoding UTF-8 -cp "$CP" -d "$BUILD/benchmark" src/main/*.java src/benchmark/main/*.java
+}
+
+command=$1
+[ $# -gt 0 ] && shift
+case "$command" in
+compile)
+	fetch com.google.code.gson gson $GSON_VERSION
+	rm -rf "$BUILD/main"
+	mkdir -p "$BUILD/main"
+	javac -encoding UTF-8 -cp "$CP" -d "$BUILD/main" src/main/*.java
+	;;
+test)
+	fetch com.google.code.gson gson $GSON_VERSION
+	fetch junit junit 4.13.2
+	fetch org.hamcrest hamcrest-core 1.3
+	rm -rf "$BUILD/test"
+	mkdir -p "$BUILD/test"
+	javac -encoding UTF-8 -cp "$CP" -d "$BUILD/test" src/main/*.java src/test/main/*.java
+	java -cp "$BUILD/test:$CP" org.junit.runner.JUnitCore $(cd src/test/main && ls *Test.java | sed 's/^/main./; s/\.java$//')
+	;;
+bench)
+	compile_benchmark
+	java -cp "$BUILD/benchmark:$CP" org.openjdk.jmh.Main "$@"
+	;;
+loadtest)
+	compile_benchmark
+	java -cp "$BUILD/benchmark:$CP" main.LoadTest "$@"
+	;;
+*)
+	sed -n '2,8p' "$0" | cut -c3-
+	exit 1
+	;;
+esac
@@ -0,0 +1,104 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Synthetic data shared by the benchmarks.
+ * 
+ * @author Zhen Chen
+ *
+ */
+
+final class BenchmarkData {
+	private static final String[] HOSTS = { "www.youtube.com", "www.bilibili.com", "v.youku.com", "vimeo.com" };
+
+	private BenchmarkData() {
+	}
+
+	static String url(int i) {
+		return "https://" + HOSTS[i % HOSTS.length] + "/watch?v=" + Integer.toString(i, 36) + "&t=" + i;
+	}
+
+	/**
+	 * @param size
+	 * @return a target list with titles and formats, as after fetching info
+	 * @throws MalformedURLException
+	 */
+	static Set<Target> targets(int size) throws MalformedURLException {
+		Set<Target> targets = new LinkedHashSet<Target>();
+		for (int i = 0; i < size; i++) {
+			Target target = new Target(url(i), "Title of video number " + i);
+			target.addFormat("mp4hd");
+			target.addFormat("mp4sd");
+			target.addFormat("flv");
+			targets.add(target);
+		}
+		return targets;
+	}
+
+	/**
+	 * @param size
+	 *            number of bytes
+	 * @return lines looking like progress printed by You-Get
+	 */
+	static byte[] output(int size) {
+		byte[] line = " 45.3% ( 12.3/ 27.1MB) [==========          ] [1/1]    2 MB/s\n".getBytes();
+		byte[] output = new byte[size];
+		for (int i = 0; i < size; i++) {
+			output[i] = line[i % line.length];
+		}
+		return output;
+	}
+
+	/**
+	 * A finished process whose stdout and stderr are the given bytes.
+	 */
+	static final class FakeProcess extends Process {
+		private final byte[] output;
+		private final byte[] error;
+
+		FakeProcess(byte[] output, byte[] error) {
+			this.output = output;
+			this.error = error;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			};
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(output);
+		}
+
+		@Override
+		public InputStream getErrorStream() {
+			return new ByteArrayInputStream(error);
+		}
+
+		@Override
+		public int waitFor() {
+			return 0;
+		}
+
+		@Override
+		public int exitValue() {
+			return 0;
+		}
+
+		@Override
+		public void destroy() {
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A load test of the whole download pipeline against a stub You-Get, e.g.
+ * src/benchmark/stub/you_get_stub.py, so that no real site is hit.
+ * 
+ * For each concurrency level, it downloads all synthetic targets into a
+ * temporary folder through one Scheduler, set up like Controller.download()
+ * with separate folders and a preferred format: INFO tasks run in a pool of
+ * their own of the same size as the level, and a FollowUp queues the DOWNLOAD
+ * of each target as soon as its info has been fetched. Then it reports
+ * throughput, latency percentiles of targets and peak heap usage.
+ * 
+ * Usage: LoadTest executable [number of targets] [concurrency levels...]
+ * 
+ * The stub is configured by its environment variables, which are inherited
+ * from this program.
+ * 
+ * @author Zhen Chen
+ *
+ */
+
+public final class LoadTest {
+	private static final int DEFAULT_NUMBER_OF_TARGETS = 1000;
+	private static final int[] DEFAULT_LEVELS = { 1, 4, 16, 64 };
+	private static final String PREFERRED_FORMAT = "mp4hd";
+
+	/**
+	 * It records the latency of each target from the start of its first task
+	 * to the finish of its last one.
+	 */
+	private static final class LatencyRecorder implements ProgressListener {
+		private final Map<Target, Long> startedAt = new ConcurrentHashMap<Target, Long>();
+		private final List<Long> latencies = new ArrayList<Long>();
+
+		@Override
+		public void onStarted(Target target) {
+			startedAt.put(target, System.nanoTime());
+		}
+
+		@Override
+		public void onTaskStarted(YouGet task) {
+		}
+
+		@Override
+		public void onProgress(ProgressEvent event) {
+		}
+
+		@Override
+		public void onFinished(Target target, boolean success) {
+			Long start = startedAt.remove(target);
+			if (start != null) {
+				synchronized (latencies) {
+					latencies.add(System.nanoTime() - start);
+				}
+			}
+		}
+
+		/**
+		 * @return all latencies in nanoseconds in ascending order
+		 */
+		long[] getSorted() {
+			long[] sorted;
+			synchronized (latencies) {
+				sorted = new long[latencies.size()];
+				for (int i = 0; i < sorted.length; i++) {
+					sorted[i] = latencies.get(i);
+				}
+			}
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+
+	private LoadTest() {
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e9;
+	}
+
+	private static List<MemoryPoolMXBean> getHeapPools() {
+		List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pools.add(pool);
+			}
+		}
+		return pools;
+	}
+
+	/**
+	 * Run the pipeline once with the given concurrency level and print a row
+	 * of the report.
+	 */
+	private static void run(int size, int level, final File root) throws MalformedURLException {
+		List<Target> targets = new ArrayList<Target>();
+		for (int i = 0; i < size; i++) {
+			targets.add(new Target(BenchmarkData.url(i)));
+		}
+		List<MemoryPoolMXBean> pools = getHeapPools();
+		System.gc();
+		for (MemoryPoolMXBean pool : pools) {
+			pool.resetPeakUsage();
+		}
+		LatencyRecorder recorder = new LatencyRecorder();
+		Controller.addProgressListener(recorder);
+		long start = System.nanoTime();
+		int failed = 0;
+		try {
+			List<YouGet> processes = new ArrayList<YouGet>();
+			for (Target target : targets) {
+				processes.add(new YouGet(target, YouGet.Task.INFO));
+			}
+			Scheduler scheduler = new Scheduler(level, false, null);
+			scheduler.setPoolLimit(YouGet.Task.INFO, level);
+			scheduler.setFollowUp(new Scheduler.FollowUp() {
+				@Override
+				public YouGet next(YouGet yg) {
+					if (yg.getTask() != YouGet.Task.INFO) {
+						return null;
+					}
+					Target target = yg.getTarget();
+					String path = new File(root,
+							target.getTitle().replaceAll(Controller.INVALID_DIRECTORY_CHARACTER_PATTERN, "")).getPath();
+					String format = target.getFormats().contains(PREFERRED_FORMAT) ? PREFERRED_FORMAT : null;
+					return new YouGet(target, YouGet.Task.DOWNLOAD, path, format, false);
+				}
+			});
+			failed = scheduler.runAll(processes).size();
+		} finally {
+			Controller.removeProgressListener(recorder);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long peak = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			peak += pool.getPeakUsage().getUsed();
+		}
+		long[] latencies = recorder.getSorted();
+		System.out.printf("%6d %8d %7d %9.1f %10.2f %8.3f %8.3f %8.3f %8.3f %9.1f%n", level, size, failed, seconds,
+				size / seconds, percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+				percentile(latencies, 100), peak / (1024.0 * 1024));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: LoadTest executable [number of targets] [concurrency levels...]");
+			System.exit(1);
+		}
+		YouGet.setExecutable(args[0], false);
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUMBER_OF_TARGETS;
+		int[] levels = DEFAULT_LEVELS;
+		if (args.length > 2) {
+			levels = new int[args.length - 2];
+			for (int i = 2; i < args.length; i++) {
+				levels[i - 2] = Integer.parseInt(args[i]);
+			}
+		}
+		File root = File.createTempFile("load-test-", "");
+		root.delete();
+		root.mkdirs();
+		System.out.printf("%6s %8s %7s %9s %10s %8s %8s %8s %8s %9s%n", "level", "targets", "failed", "seconds",
+				"targets/s", "p50 s", "p95 s", "p99 s", "max s", "peak MB");
+		for (int level : levels) {
+			run(size, level, root);
+		}
+		YouGet.getTransport().close();
+	}
+
+}
@@ -0,0 +1,53 @@
+package main;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of ProcessReader reading large synthetic stdout and stderr, with
+ * everything kept or only a tail of it.
+ * 
+ * @author Zhen Chen
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessReaderBenchmark {
+	// bytes of each stream
+	@Param({ "1048576", "16777216" })
+	public int size;
+	// 0 keeps everything
+	@Param({ "0", "16384" })
+	public int tailLength;
+	private byte[] output;
+
+	@Setup
+	public void setUp() {
+		output = BenchmarkData.output(size);
+	}
+
+	@Benchmark
+	public int read() throws UnsupportedEncodingException {
+		Process p = new BenchmarkData.FakeProcess(output, output);
+		ProcessReader pr = new ProcessReader(p, "UTF8", true, tailLength);
+		return pr.getOutput().length() + pr.getError().length();
+	}
+
+}
@@ -0,0 +1,70 @@
+package main;
+
+import java.io.FileNotFoundException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of running tasks through the Scheduler and
+ * Controller.startTaskAll(), with a no-op executable standing in for You-Get
+ * so that only process spawning and scheduling are measured.
+ * 
+ * @author Zhen Chen
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SchedulerBenchmark {
+	// any command exiting with 0 right away
+	@Param({ "true" })
+	public String executable;
+	@Param({ "100" })
+	public int tasks;
+	@Param({ "1", "8", "32" })
+	public int threads;
+	private List<YouGet> processes;
+
+	@Setup(Level.Invocation)
+	public void setUp() throws FileNotFoundException, MalformedURLException {
+		YouGet.setExecutable(executable, false);
+		YouGet.setCharset(null);
+		processes = new ArrayList<YouGet>();
+		for (int i = 0; i < tasks; i++) {
+			processes.add(new YouGet(new Target(BenchmarkData.url(i)), YouGet.Task.DOWNLOAD, "/tmp", null, false));
+		}
+	}
+
+	@Benchmark
+	public Set<Target> scheduler() {
+		return new Scheduler(threads, false, null).runAll(processes);
+	}
+
+	@Benchmark
+	public int startTaskAll() {
+		// without settings, it runs DEFAULT_NUMBER_OF_THREADS at a time
+		Controller.startTaskAll(processes, true);
+		return processes.size();
+	}
+
+}
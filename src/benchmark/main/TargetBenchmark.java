@@ -0,0 +1,82 @@
+package main;
+
+import java.net.MalformedURLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of Target.equals and Target.hashCode through lookups in a large
+ * LinkedHashSet, as used for the target list.
+ * 
+ * @author Zhen Chen
+ *
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TargetBenchmark {
+	@Param({ "10000", "100000" })
+	public int size;
+	private Set<Target> targets;
+	private Target[] present;
+	private Target[] absent;
+	private int i = 0;
+
+	@Setup
+	public void setUp() throws MalformedURLException {
+		targets = new LinkedHashSet<Target>();
+		present = new Target[size];
+		absent = new Target[size];
+		for (int j = 0; j < size; j++) {
+			targets.add(new Target(BenchmarkData.url(j)));
+			// equal but different instances, as built from user input
+			present[j] = new Target(BenchmarkData.url(j));
+			absent[j] = new Target(BenchmarkData.url(size + j));
+		}
+	}
+
+	private final int next() {
+		i = (i + 1) % size;
+		return i;
+	}
+
+	@Benchmark
+	public boolean containsPresent() {
+		return targets.contains(present[next()]);
+	}
+
+	@Benchmark
+	public boolean containsAbsent() {
+		return targets.contains(absent[next()]);
+	}
+
+	@Benchmark
+	public int hashCodeOnly() {
+		return present[next()].hashCode();
+	}
+
+	@Benchmark
+	public boolean addAndRemove() {
+		Target target = absent[next()];
+		targets.add(target);
+		return targets.remove(target);
+	}
+
+}
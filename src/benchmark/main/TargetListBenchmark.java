@@ -0,0 +1,67 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saving and loading target.json through TargetListFile, the same way as
+ * Controller.save() and Controller.load().
+ * 
+ * @author Zhen Chen
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class TargetListBenchmark {
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+	private Set<Target> targets;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		targets = BenchmarkData.targets(size);
+		file = File.createTempFile("target-", ".json");
+		TargetListFile.write(file.getPath(), targets);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public long save() throws IOException {
+		TargetListFile.write(file.getPath(), targets);
+		return file.length();
+	}
+
+	@Benchmark
+	public int load() throws IOException {
+		Set<Target> loaded = new LinkedHashSet<Target>();
+		TargetListFile.read(file.getPath(), loaded);
+		return loaded.size();
+	}
+
+}
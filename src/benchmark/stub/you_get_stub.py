@@ -0,0 +1,129 @@
+#!/usr/bin/env python3
+"""A stand-in for the You-Get executable, for load testing the wrapper
+without network access. Point YouGet.setExecutable at this file.
+
+It accepts the arguments the wrapper passes to You-Get. With --json, it
+prints metadata of each URL like "you-get --json" does. Otherwise it prints
+the info header and a progress bar redrawn after each carriage return like a
+real download, but writes no file.
+
+It is configured by environment variables:
+
+    STUB_LATENCY        mean seconds a run takes, exponentially distributed
+                        (default 0.5)
+    STUB_OUTPUT         bytes of progress output of a download (default 4096)
+    STUB_FAILURE_RATE   probability of a run failing (default 0)
+    STUB_HANG_RATE      probability of a run hanging (default 0)
+    STUB_HANG_SECONDS   seconds a hanging run sleeps (default 3600)
+    STUB_SEED           seed of the random generator, for repeatable runs,
+                        combined with the arguments so that each URL still
+                        gets its own outcome
+"""
+
+import json
+import os
+import random
+import sys
+import time
+import zlib
+
+PROGRESS_WIDTH = 40
+ERRORS = [
+    'you-get: [Failed] Unsupported URL pattern.\n',
+    'urllib.error.HTTPError: HTTP Error 404: Not Found\n',
+    'urllib.error.HTTPError: HTTP Error 403: Forbidden\n',
+    'urllib.error.HTTPError: HTTP Error 429: Too Many Requests\n',
+    'urllib.error.URLError: <urlopen error timed out>\n',
+    'ConnectionResetError: [Errno 104] Connection reset by peer\n',
+]
+
+
+def env(name, default):
+    value = os.environ.get(name)
+    return type(default)(value) if value else default
+
+
+def parse(args):
+    """Return (urls, json_mode, format) from You-Get arguments, removing the
+    quotes the wrapper puts around values."""
+    args = [a[1:-1] if len(a) > 1 and a[0] == a[-1] == '"' else a for a in args]
+    urls = []
+    json_mode = False
+    fmt = None
+    i = 0
+    while i < len(args):
+        a = args[i]
+        if a == '--json':
+            json_mode = True
+        elif a in ('-o', '-F'):
+            i += 1
+            if a == '-F' and i < len(args):
+                fmt = args[i]
+        elif not a.startswith('-'):
+            urls.append(a)
+        i += 1
+    return urls, json_mode, fmt
+
+
+def metadata(url):
+    size = 1024 * 1024 * (1 + zlib.crc32(url.encode('utf-8')) % 200)
+    return {
+        'url': url,
+        'title': 'Stub title of %s' % url,
+        'site': 'Stub',
+        'streams': {
+            'mp4hd': {'container': 'mp4', 'quality': 'hd', 'size': size},
+            'mp4sd': {'container': 'mp4', 'quality': 'sd', 'size': size // 2},
+            'flv': {'container': 'flv', 'quality': 'sd', 'size': size // 3},
+        },
+    }
+
+
+def download(url, fmt, latency, volume):
+    info = metadata(url)
+    stream = info['streams'].get(fmt or 'mp4hd', info['streams']['mp4hd'])
+    total = stream['size'] / 1024.0 / 1024.0
+    out = sys.stdout
+    out.write('Site:       %s\n' % info['site'])
+    out.write('Title:      %s\n' % info['title'])
+    out.write('Type:       MPEG-4 video (video/mp4)\n')
+    out.write('Size:       %.1f MiB (%d Bytes)\n\n' % (total, stream['size']))
+    out.write('Downloading %s.%s ...\n' % (info['title'], stream['container']))
+    line = '%5.1f%% (%5.1f/%5.1fMB) ├%s┤[1/1] %4d MB/s\r'
+    updates = max(1, volume // len(line % (0, 0, total, '─' * PROGRESS_WIDTH, 0)))
+    speed = max(1, int(total / max(latency, 0.001)))
+    for i in range(1, updates + 1):
+        percent = 100.0 * i / updates
+        bar = '█' * int(PROGRESS_WIDTH * i / updates)
+        out.write(line % (percent, total * i / updates, total, bar.ljust(PROGRESS_WIDTH, '─'), speed))
+        out.flush()
+        time.sleep(latency / updates)
+    out.write('\n\n')
+
+
+def main(args):
+    seed = os.environ.get('STUB_SEED')
+    random.seed(None if seed is None else seed + ' '.join(args))
+    latency = random.expovariate(1.0 / env('STUB_LATENCY', 0.5)) if env('STUB_LATENCY', 0.5) > 0 else 0
+    urls, json_mode, fmt = parse(args)
+    if not urls:
+        sys.stderr.write('you-get: no URL given\n')
+        return 1
+    if random.random() < env('STUB_HANG_RATE', 0.0):
+        time.sleep(env('STUB_HANG_SECONDS', 3600.0))
+    if random.random() < env('STUB_FAILURE_RATE', 0.0):
+        time.sleep(latency / 2)
+        sys.stderr.write(random.choice(ERRORS))
+        return 1
+    if json_mode:
+        time.sleep(latency)
+        for url in urls:
+            sys.stdout.write(json.dumps(metadata(url), indent=4) + '\n')
+        return 0
+    for url in urls:
+        download(url, fmt, latency / len(urls), env('STUB_OUTPUT', 4096))
+    return 0
+
+
+if __name__ == '__main__':
+    sys.exit(main(sys.argv[1:]))
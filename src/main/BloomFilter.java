@@ -0,0 +1,75 @@
+package main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * A Bloom filter of strings. mightContain() never gives a false negative, and
+ * gives a false positive with about the given probability as long as no more
+ * than the expected number of strings have been put.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class BloomFilter {
+	private final BitSet bits;
+	private final int size;
+	private final int hashes;
+
+	/**
+	 * @param expected
+	 *            expected number of strings, at least 1
+	 * @param falsePositive
+	 *            wanted probability of false positives, between 0 and 1
+	 */
+	public BloomFilter(int expected, double falsePositive) {
+		expected = Math.max(1, expected);
+		long m = (long) Math.ceil(-expected * Math.log(falsePositive) / (Math.log(2) * Math.log(2)));
+		size = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 63, m));
+		hashes = Math.max(1, (int) Math.round((double) size / expected * Math.log(2)));
+		bits = new BitSet(size);
+	}
+
+	public final void put(String s) {
+		long hash = hash(s);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashes; i++) {
+			bits.set(index(h1 + i * h2));
+		}
+	}
+
+	public final boolean mightContain(String s) {
+		long hash = hash(s);
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashes; i++) {
+			if (!bits.get(index(h1 + i * h2))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private final int index(int combined) {
+		return (combined & Integer.MAX_VALUE) % size;
+	}
+
+	/**
+	 * 64-bit FNV-1a of the UTF-8 bytes, mixed so both halves are usable as
+	 * independent hashes.
+	 */
+	private static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
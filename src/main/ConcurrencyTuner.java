@@ -0,0 +1,87 @@
+package main;
+
+/**
+ * It decides how many YouGet processes should be running at the same time
+ * based on what has been observed so far in a run.
+ *
+ * Finished tasks are collected into windows. At the end of each window, if
+ * too many attempts have failed with a ProcessErrorException, the limit is
+ * halved. Otherwise the completion throughput of the window is compared with
+ * the previous one: the limit keeps moving in the same direction while the
+ * throughput improves and turns around once it drops.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class ConcurrencyTuner {
+	// failed attempts beyond this rate are treated as being throttled
+	private static final double MAX_ERROR_RATE = 0.2;
+	// throughput within this ratio of the previous window is not a drop
+	private static final double TOLERANCE = 0.05;
+	private static final int MIN_WINDOW = 4;
+	private final int max;
+	private int limit;
+	private int direction = 1;
+	private double lastThroughput = 0;
+	private long windowStart = System.nanoTime();
+	private int completed = 0;
+	private int attempts = 0;
+	private int errors = 0;
+
+	/**
+	 * @param max
+	 *            the limit will never go beyond this, at least 1
+	 */
+	public ConcurrencyTuner(int max) {
+		this.max = Math.max(1, max);
+		this.limit = Math.min(2, this.max);
+	}
+
+	public final int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Record a finished task and adjust the limit if the current window is
+	 * complete.
+	 *
+	 * @param yg
+	 *            a YouGet task which has finished running
+	 * @return the limit to be used from now on
+	 */
+	public final int record(YouGet yg) {
+		completed++;
+		errors += yg.getProcessErrors();
+		attempts += yg.getProcessErrors();
+		if (yg.isSuccess()) {
+			attempts++;
+		}
+		if (completed >= Math.max(MIN_WINDOW, 2 * limit)) {
+			adjust();
+		}
+		return limit;
+	}
+
+	private final void adjust() {
+		long now = System.nanoTime();
+		double throughput = completed / Math.max((now - windowStart) / 1e9, 1e-3);
+		if (attempts > 0 && (double) errors / attempts > MAX_ERROR_RATE) {
+			limit = Math.max(1, limit / 2);
+			direction = 1;
+			// start over after backing off
+			lastThroughput = 0;
+		} else {
+			if (throughput < lastThroughput * (1 - TOLERANCE)) {
+				direction = -direction;
+			}
+			lastThroughput = throughput;
+			limit = Math.min(max, Math.max(1, limit + direction));
+		}
+		windowStart = now;
+		completed = 0;
+		attempts = 0;
+		errors = 0;
+	}
+
+}
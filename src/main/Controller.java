@@ -2,19 +2,21 @@ package main;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.MalformedURLException;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 
 /**
  * This is the controller for downloading videos from multiple URLs given by the
@@ -28,8 +30,11 @@ import com.google.gson.JsonObject;
  */
 
 public class Controller {
-	// at least 1 thread
-	private static final int MAX_NUMBER_OF_THREADS = 1;
+	// at least 1 thread, used when there are no settings specifying it
+	static final int DEFAULT_NUMBER_OF_THREADS = 1;
+	// at least 1 thread, used to fetch info when there are no settings
+	// specifying it
+	static final int DEFAULT_NUMBER_OF_INFO_THREADS = 4;
 
 	// location of the downloading engine
 	// private static final String LOCATION = "D:/软件/You-Get/";
@@ -43,20 +48,86 @@ public class Controller {
 	// Windows platform uses UTF8 as charset in Chinese version
 	private static final String CHARSET = "UTF8";
 
+	// threads running YouGet tasks and reading their output, VIRTUAL needs a
+	// Java version supporting virtual threads, otherwise PLATFORM is used
+	private static final Execution.Mode EXECUTION_MODE = Execution.Mode.PLATFORM;
+
+	// whether targets are downloaded into separate folders in one pass, each
+	// into a staging folder renamed after the title printed by the download,
+	// instead of fetching the title first, only used without a preferred
+	// quality, which needs the formats of each target
+	static final boolean SINGLE_PASS = false;
+
+	// number of targets whose info is fetched by one YouGet process, used
+	// when there are no settings specifying it, 1 to disable batching
+	static final int DEFAULT_INFO_BATCH_SIZE = 1;
+
+	// whether to run You-Get in a pool of long-lived Python workers importing
+	// You-Get once instead of starting a process for each task, it needs
+	// You-Get installed as a Python package
+	private static final boolean WORKER_POOL = false;
+	private static final String[] WORKER_COMMAND = { "python", "worker/you_get_worker.py" };
+	private static final int WORKER_POOL_SIZE = 4;
+	// number of jobs run by a worker before it is replaced by a new one
+	private static final int WORKER_MAX_JOBS = 100;
+	// minutes a job may take before its worker is considered hung and killed
+	private static final int WORKER_JOB_TIMEOUT = 360;
+
+	// whether to send the output of downloading to files instead of reading
+	// it, and only read the error if downloading has failed
+	private static final boolean REDIRECT_DOWNLOAD_OUTPUT = false;
+	// directory of a log file for each target when the output of downloading
+	// is redirected, null to discard it
+	private static final String DOWNLOAD_LOG_DIRECTORY = null;
+
+	// paths to export metrics of YouGet tasks to as Json and as Prometheus
+	// text format, during and at the end of each run, only used if the
+	// program is started with --metrics
+	private static final String METRICS_JSON_PATH = "metrics.json";
+	private static final String METRICS_PROMETHEUS_PATH = "metrics.prom";
+	private static final String METRICS_FLAG = "--metrics";
+	// seconds between two exports during a run
+	private static final int METRICS_EXPORT_INTERVAL = 30;
+
 	// path to load and save target list
 	private static final String TARGET_LIST_PATH = "target.json";
+	// whether to keep the target list in an append-only log instead, where
+	// each change is written as it happens and the list is loaded on startup
+	private static final boolean TARGET_LOG = false;
+	private static final String TARGET_LOG_PATH = "target.log";
 
 	// path to load and save settings
 	private static final String SETTING_PATH = "setting.json";
 
-	private static final String INVALID_DIRECTORY_CHARACTER_PATTERN = "[/\\:*?\"<>|]";
+	// path to load and save the metadata cache, null to disable the cache
+	private static final String METADATA_CACHE_PATH = "metadata.json";
+	// days fetched info stays valid in the metadata cache
+	private static final int METADATA_CACHE_DAYS = 30;
+	// maximum number of URLs kept in the metadata cache
+	private static final int METADATA_CACHE_SIZE = 100000;
+
+	// default path of the journal of the running download, for resuming it
+	// after a crash
+	static final String DEFAULT_JOURNAL_PATH = "journal.log";
+
+	// default path of the history of downloaded URLs, which are skipped by
+	// later downloads unless overwriting is forced
+	static final String DEFAULT_DOWNLOAD_HISTORY_PATH = "history.log";
+
+	static final String INVALID_DIRECTORY_CHARACTER_PATTERN = "[/\\:*?\"<>|]";
 	private static Setting setting = null;
-	private static Set<YouGet> threadPool = new HashSet<YouGet>();
-	private static Set<Target> targetSet = new LinkedHashSet<Target>();
+	// paths metrics are exported to, null while exporting is off
+	private static String metricsJsonPath = null;
+	private static String metricsPrometheusPath = null;
+	private static Journal journal = null;
+	private static DownloadHistory history = null;
+	private static TargetStore store = null;
+	private static TargetRegistry targetSet = new TargetRegistry();
 	// store failed targets temporarily after running a set of targets each time
 	private static Set<Target> failedTargetSet = new HashSet<Target>();
 	// settings for downloading
 	public static Object printLock = new Object();
+	private static final List<ProgressListener> progressListeners = new CopyOnWriteArrayList<ProgressListener>();
 
 	protected static enum Choice {
 		ADD, DELETE, TITLE, DOWNLOAD, LOAD, SAVE, LOAD_SETTING, SAVE_SETTING, RESET, RESET_TARGET, RESET_SETTING, RESET_ALL, EXIT, YES, NO, CANCEL, OVERWRITE, APPEND, MULTIPLE, SINGLE;
@@ -75,7 +146,9 @@ public class Controller {
 		System.out.println("Please enter all target URLs, one line for each:");
 		while (!(line = Helper.input.readLine()).equals("")) {
 			try {
-				if (targetSet.add(new Target(line))) {
+				Target target = new Target(line);
+				if (targetSet.add(target)) {
+					store.add(target);
 					count++;
 				}
 			} catch (MalformedURLException e) {
@@ -89,7 +162,8 @@ public class Controller {
 	}
 
 	/**
-	 * Delete all target URLs specified by user.
+	 * Delete all target URLs specified by user, by their ids or ranges of ids
+	 * like "5-900".
 	 * 
 	 * An empty line indicates the end of input.
 	 * 
@@ -99,85 +173,155 @@ public class Controller {
 		if (targetSet.isEmpty()) {
 			return;
 		}
-		Set<String> options = new HashSet<String>();
-		options.add("");
-		options.add("all");
-		for (int i = 1; i <= targetSet.size(); i++) {
-			// for user, index starts from 1
-			options.add(Integer.toString(i));
-		}
 		int count = 0;
 		String line;
-		System.out.println(
-				"Please enter ids of all target URLs to delete, one line for each, enter \"all\" to delete all targets:");
-		Set<Integer> toRemove = new HashSet<Integer>();
-		boolean removeAll = false;
-		while (!(line = Helper.getUserChoice(options)).equals("")) {
-			if (line.equals("all")) {
-				removeAll = true;
-				count = targetSet.size();
+		System.out.println("Please enter ids of all target URLs to delete, one line for each, "
+				+ "a range like 5-900 for all ids in it, enter \"all\" to delete all targets:");
+		while (!(line = Helper.input.readLine().trim()).equals("")) {
+			if (line.toLowerCase().equals("all")) {
+				count += targetSet.size();
+				targetSet.clear();
+				store.removeAll();
 				break;
 			}
-			// for program, index starts from 0
-			if (toRemove.add(Integer.parseInt(line) - 1)) {
-				count++;
+			int[] range = parseRange(line);
+			if (range == null) {
+				System.out.println("Invalid id.");
+				continue;
 			}
-		}
-		if (removeAll) {
-			targetSet.clear();
-		} else {
-			removeTarget(toRemove);
+			List<Target> removed = removeTarget(range[0], range[1]);
+			if (removed.isEmpty()) {
+				System.out.println("No such target.");
+			}
+			count += removed.size();
 		}
 		System.out.printf("%d URLs deleted, %d URLs in target list now.%n", count, targetSet.size());
 	}
 
 	/**
-	 * It fires each process in the provided list in a controlled manner. Only
-	 * MAX_NUMBER_OF_THREADS number of threads are allowed to be running at the
-	 * same time.
+	 * @param line
+	 *            an id or a range of ids like "5-900"
+	 * @return the first and the last id, or null if the line is invalid
+	 */
+	private static int[] parseRange(String line) {
+		int dash = line.indexOf('-');
+		try {
+			int from;
+			int to;
+			if (dash < 0) {
+				from = Integer.parseInt(line);
+				to = from;
+			} else {
+				from = Integer.parseInt(line.substring(0, dash).trim());
+				to = Integer.parseInt(line.substring(dash + 1).trim());
+			}
+			if (from < 1 || to < from) {
+				return null;
+			}
+			return new int[] { from, to };
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * It runs each process in the provided list through a Scheduler. Only the
+	 * number of threads given by the settings, or DEFAULT_NUMBER_OF_THREADS if
+	 * there are no settings, are allowed to be running at the same time and a
+	 * new one is started as soon as any of them finishes. In adaptive mode,
+	 * the scheduler tunes the number itself within this maximum. Hosts with
+	 * their own limits in the settings are capped further.
+	 * 
+	 * It adds all failed targets to failedTargetSet.
 	 * 
 	 * @param processes
 	 *            a list of prepared processes to be fired and managed by a
-	 *            threading pool
+	 *            scheduler
 	 * @param mute
 	 *            if true, no info messages will be displayed to the user
 	 */
 	protected static void startTaskAll(List<YouGet> processes, boolean mute) {
-		int total = processes.size();
-		int i = 0;
-		for (YouGet yg : processes) {
-			if (threadPool.size() == MAX_NUMBER_OF_THREADS) {
-				clearThreadPool();
+		startTaskAll(processes, null, mute);
+	}
+
+	/**
+	 * The same as startTaskAll(processes, mute), except that the next task of
+	 * each target given by followUp is run as soon as its previous one has
+	 * succeeded. INFO tasks run in a pool of their own sized by the settings.
+	 * 
+	 * @param processes
+	 * @param followUp
+	 *            may be null
+	 * @param mute
+	 */
+	protected static void startTaskAll(List<YouGet> processes, Scheduler.FollowUp followUp, boolean mute) {
+		failedTargetSet.addAll(runTaskAll(processes, followUp, mute));
+	}
+
+	/**
+	 * It runs each process in the provided list through a Scheduler. Unless
+	 * muted, a ProgressReporter shows the progress of the run to the user.
+	 * Metrics are exported periodically during the run and once at its end.
+	 * 
+	 * @param processes
+	 * @param followUp
+	 *            may be null
+	 * @param mute
+	 * @return targets of all failed processes
+	 */
+	private static Set<Target> runTaskAll(List<YouGet> processes, Scheduler.FollowUp followUp, boolean mute) {
+		ProgressReporter reporter = null;
+		if (!mute) {
+			reporter = new ProgressReporter(processes.size());
+			addProgressListener(reporter);
+		}
+		Thread exporter = null;
+		if (metricsJsonPath != null || metricsPrometheusPath != null) {
+			exporter = Metrics.startExporting(TimeUnit.SECONDS.toMillis(METRICS_EXPORT_INTERVAL), metricsJsonPath,
+					metricsPrometheusPath);
+		}
+		try {
+			Scheduler scheduler = newScheduler();
+			scheduler.setFollowUp(followUp);
+			return scheduler.runAll(processes);
+		} finally {
+			if (exporter != null) {
+				exporter.interrupt();
+				Metrics.export(metricsJsonPath, metricsPrometheusPath);
 			}
-			threadPool.add(yg);
-			yg.start();
-			if (!mute) {
-				System.out.printf("%d of %d...%n", ++i, total);
+			if (reporter != null) {
+				removeProgressListener(reporter);
+				reporter.stop();
 			}
 		}
-		clearThreadPool();
 	}
 
 	/**
-	 * It waits for each thread in the threadPool to finish and then makes the
-	 * threadPool clear.
+	 * Register a listener to be told about the progress of all YouGet tasks
+	 * run from now on.
 	 * 
-	 * It adds all failed targets to failedTargetSet.
+	 * @param listener
 	 */
-	protected static void clearThreadPool() {
-		for (YouGet yg : threadPool) {
-			try {
-				yg.join();
-				if (!yg.isSuccess()) {
-					failedTargetSet.add(yg.getTarget());
-				}
-			} catch (InterruptedException e) {
-				synchronized (Controller.printLock) {
-					e.printStackTrace();
-				}
-			}
+	public static void addProgressListener(ProgressListener listener) {
+		progressListeners.add(listener);
+	}
+
+	public static void removeProgressListener(ProgressListener listener) {
+		progressListeners.remove(listener);
+	}
+
+	static List<ProgressListener> getProgressListeners() {
+		return progressListeners;
+	}
+
+	private static Scheduler newScheduler() {
+		if (setting == null) {
+			return new Scheduler(DEFAULT_NUMBER_OF_THREADS, false, null);
 		}
-		threadPool.clear();
+		Scheduler scheduler = new Scheduler(setting.threads, setting.adaptiveThreads, setting.hostLimits);
+		scheduler.setPoolLimit(YouGet.Task.INFO, setting.infoThreads);
+		scheduler.setOrder(setting.downloadOrder);
+		return scheduler;
 	}
 
 	/**
@@ -187,7 +331,7 @@ public class Controller {
 	protected static void reportFailure() {
 		synchronized (printLock) {
 			for (Target target : failedTargetSet) {
-				System.out.printf("%s has failed.%n", target.getUrl().toString());
+				System.out.printf("%s has failed.%n", target.getUrlString());
 			}
 			String message = "";
 			message += "Do you want to delete these failed URLs from the target list? (y/n)%n";
@@ -211,7 +355,9 @@ public class Controller {
 	 */
 	private static void removeFailed() {
 		for (Target target : failedTargetSet) {
-			targetSet.remove(target);
+			if (targetSet.remove(target)) {
+				store.remove(target);
+			}
 		}
 		failedTargetSet.clear();
 	}
@@ -226,34 +372,28 @@ public class Controller {
 			target = it.next();
 			if (!failedTargetSet.contains(target)) {
 				it.remove();
+				store.remove(target);
 			}
 		}
 	}
 
 	/**
-	 * It creates an empty set and put all targets that are not asked to remove
-	 * into this new set. At the end, it replaces the old targetSet with the new
-	 * one.
-	 * 
-	 * Note: remove() method will not work if the hashCode() value of an object
-	 * has been changed after it was added to the set.
+	 * It removes all targets whose ids are within the given range from
+	 * targetSet, keeping the order and ids of the others.
 	 * 
-	 * @param toRemove
-	 *            indexes of all targets to be removed
+	 * @param from
+	 *            the first id, inclusive
+	 * @param to
+	 *            the last id, inclusive
+	 * @return removed targets
 	 */
-	protected static void removeTarget(Set<Integer> toRemove) {
-		Target target;
-		Set<Target> temp = new HashSet<Target>();
-		Iterator<Target> it = targetSet.iterator();
-		for (int i = 0; it.hasNext(); i++) {
-			target = it.next();
-			if (toRemove.contains(i)) {
-				System.out.printf("%s has been removed.%n", target.getUrl().toString());
-			} else {
-				temp.add(target);
-			}
+	protected static List<Target> removeTarget(int from, int to) {
+		List<Target> removed = targetSet.removeRange(from, to);
+		for (Target target : removed) {
+			store.remove(target);
+			System.out.printf("%s has been removed.%n", target.getUrlString());
 		}
-		targetSet = temp;
+		return removed;
 	}
 
 	/**
@@ -334,19 +474,73 @@ public class Controller {
 	}
 
 	protected static void displayTarget() {
-		int id = 0;
 		System.out.println("Targets:");
 		for (Target target : targetSet) {
-			System.out.printf("%d. %s%n", ++id, target.getUrl().toString());
+			System.out.printf("%d. %s%n", targetSet.getId(target), target.getUrlString());
 		}
 	}
 
+	/**
+	 * Fetch the info of all targets in targetSet.
+	 * 
+	 * @param mute
+	 *            if true, no info messages will be displayed to the user
+	 */
 	protected static void getInfo(boolean mute) {
+		getInfo(targetSet, mute);
+	}
+
+	/**
+	 * Fetch the info of the given targets. If the batch size given by the
+	 * settings, or DEFAULT_INFO_BATCH_SIZE if there are no settings, is greater
+	 * than 1, targets of the same host are first fetched in batches, and only
+	 * those left without info are fetched one by one afterwards.
+	 * 
+	 * It adds all failed targets to failedTargetSet.
+	 * 
+	 * @param targets
+	 * @param mute
+	 *            if true, no info messages will be displayed to the user
+	 */
+	protected static void getInfo(Collection<Target> targets, boolean mute) {
 		List<YouGet> processes = new ArrayList<YouGet>();
-		for (Target target : targetSet) {
+		int batchSize = setting != null ? setting.infoBatchSize : DEFAULT_INFO_BATCH_SIZE;
+		if (batchSize > 1) {
+			Map<String, List<Target>> batches = new LinkedHashMap<String, List<Target>>();
+			for (Target target : targets) {
+				if (target.getTitle() != null) {
+					continue;
+				}
+				String host = target.getHost();
+				List<Target> batch = batches.get(host);
+				if (batch == null) {
+					batch = new ArrayList<Target>();
+					batches.put(host, batch);
+				}
+				batch.add(target);
+				if (batch.size() == batchSize) {
+					processes.add(new YouGet(batch));
+					batches.remove(host);
+				}
+			}
+			for (List<Target> batch : batches.values()) {
+				processes.add(new YouGet(batch));
+			}
+			// failures are not reported here, these targets are fetched again
+			runTaskAll(processes, null, mute);
+			processes.clear();
+		}
+		for (Target target : targets) {
 			processes.add(new YouGet(target, YouGet.Task.INFO));
 		}
 		startTaskAll(processes, mute);
+		saveMetadataCache();
+	}
+
+	private static void saveMetadataCache() {
+		if (YouGet.getMetadataCache() != null) {
+			YouGet.getMetadataCache().save(METADATA_CACHE_PATH);
+		}
 	}
 
 	protected static void displayTitle() throws IOException {
@@ -360,10 +554,10 @@ public class Controller {
 			System.out.println("Target list is empty.");
 			return;
 		}
-		int id = 0;
 		System.out.println("Titles:");
 		for (Target target : targetSet) {
-			System.out.printf("%d. %s    %s%n", ++id, target.getTitle(), target.getUrl().toString());
+			System.out.printf("%d. %s    %s%n", targetSet.getId(target), target.getTitle(),
+					target.getUrlString());
 		}
 		String message = "";
 		message += "Do you want to delete URLs from the target list? (y/n)%n";
@@ -376,7 +570,6 @@ public class Controller {
 	}
 
 	protected static void download() throws IOException {
-		String path;
 		String message;
 		Map<String, Choice> options;
 
@@ -384,32 +577,82 @@ public class Controller {
 			return;
 		}
 
-		// get titles of targets for folder names and get allowed formats of
-		// each target
-		if (setting.separateFolder || !setting.preferredFormat.equals("")) {
-			System.out.println("Preparing...");
-			getInfo(true);
+		// skip targets downloaded before unless overwriting is forced
+		List<Target> targets = new ArrayList<Target>();
+		int skipped = 0;
+		for (Target target : targetSet) {
+			if (history != null && !setting.forceWrite && history.get(target) != null) {
+				skipped++;
+			} else {
+				targets.add(target);
+			}
+		}
+		if (skipped > 0) {
+			System.out.printf("%d URLs have been downloaded before and are skipped.%n", skipped);
 		}
 
+		// titles of targets are needed for folder names, allowed formats of
+		// each target for the preferred quality and sizes of the formats for
+		// the order of downloads, the download of each target is queued as
+		// soon as its own info has been fetched
+		boolean info = setting.needsInfo();
 		List<YouGet> processes = new ArrayList<YouGet>();
-		for (Target target : targetSet) {
+		for (Target target : targets) {
 			if (failedTargetSet.contains(target)) {
 				continue;
 			}
-			// get rid of invalid characters in the folder name
-			if (setting.separateFolder) {
-				path = setting.root + target.getTitle().replaceAll(INVALID_DIRECTORY_CHARACTER_PATTERN, "");
+			// done before an interrupted download
+			if (journal != null && journal.getState(target) == Journal.State.DONE) {
+				continue;
+			}
+			if (journal != null) {
+				journal.record(target, target.getTitle() != null ? Journal.State.INFO_DONE : Journal.State.QUEUED);
+			}
+			if (info) {
+				processes.add(new YouGet(target, YouGet.Task.INFO));
 			} else {
-				path = setting.root + setting.folder.replaceAll(INVALID_DIRECTORY_CHARACTER_PATTERN, "");
+				processes.add(newDownload(target));
+			}
+		}
+		if (journal != null) {
+			addProgressListener(journal);
+		}
+		try {
+			startTaskAll(processes, new Scheduler.FollowUp() {
+				@Override
+				public YouGet next(YouGet yg) {
+					if (yg.getTask() != YouGet.Task.INFO) {
+						// recorded at once, so a crash does not lose it
+						if (history != null) {
+							history.add(yg.getTarget(), yg.getPath());
+						}
+						return null;
+					}
+					if (journal != null) {
+						journal.record(yg.getTarget(), Journal.State.INFO_DONE);
+					}
+					return newDownload(yg.getTarget());
+				}
+			}, false);
+		} finally {
+			if (journal != null) {
+				removeProgressListener(journal);
 			}
-			// check if preferredFormat is valid
-			String format = null;
-			if (target.getFormats().contains(setting.preferredFormat)) {
-				format = setting.preferredFormat;
+		}
+		if (info) {
+			saveMetadataCache();
+		}
+		if (history != null) {
+			try {
+				history.save();
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
-			processes.add(new YouGet(target, YouGet.Task.DOWNLOAD, path, format, setting.forceWrite));
 		}
-		startTaskAll(processes, false);
+		// finished without a crash, nothing to resume
+		if (journal != null) {
+			journal.clear();
+		}
 
 		if (!failedTargetSet.isEmpty()) {
 			reportFailure();
@@ -429,9 +672,36 @@ public class Controller {
 		failedTargetSet.clear();
 	}
 
+	/**
+	 * @param target
+	 *            a target whose info has been fetched if needed by the settings
+	 * @return a DOWNLOAD task of the given target according to the settings,
+	 *         into a staging folder if it needs a separate folder but its
+	 *         title is unknown
+	 */
+	private static YouGet newDownload(Target target) {
+		if (setting.separateFolder && target.getTitle() == null) {
+			YouGet yg = new YouGet(target, YouGet.Task.DOWNLOAD, null, null, setting.forceWrite);
+			yg.setStaging(setting.root);
+			return yg;
+		}
+		String path;
+		// get rid of invalid characters in the folder name
+		if (setting.separateFolder) {
+			path = setting.root + target.getTitle().replaceAll(INVALID_DIRECTORY_CHARACTER_PATTERN, "");
+		} else {
+			path = setting.root + setting.folder.replaceAll(INVALID_DIRECTORY_CHARACTER_PATTERN, "");
+		}
+		// check if preferredFormat is valid
+		String format = null;
+		if (target.getFormats().contains(setting.preferredFormat)) {
+			format = setting.preferredFormat;
+		}
+		return new YouGet(target, YouGet.Task.DOWNLOAD, path, format, setting.forceWrite);
+	}
+
 	protected static void load() throws IOException {
-		String json = Helper.load(TARGET_LIST_PATH);
-		if (json == null) {
+		if (!store.exists()) {
 			System.out.println("No target list file found.");
 			return;
 		}
@@ -452,28 +722,25 @@ public class Controller {
 			choice = Helper.getUserChoice(message, options);
 		}
 
-		Target target;
-		String url;
-		String title = null;
+		// read into a list first, so an invalid file changes nothing
+		List<Target> loaded = new ArrayList<Target>();
 		switch (choice) {
 		case OVERWRITE:
-			targetSet.clear();
 		case APPEND:
-			JsonArray array = Helper.jsonParser.parse(json).getAsJsonArray();
-			for (JsonElement je : array) {
-				JsonObject jo = je.getAsJsonObject();
-				url = jo.get("url").getAsString();
-				if (jo.get("title") != null) {
-					title = jo.get("title").getAsString();
-				}
-				target = new Target(url, title);
-				JsonArray ja = jo.getAsJsonArray("formats");
-				if (ja != null) {
-					for (JsonElement format : ja) {
-						target.addFormat(format.getAsString());
-					}
+			try {
+				store.load(loaded);
+			} catch (IOException | JsonParseException e) {
+				System.out.println("Invalid target list file, nothing has been loaded.");
+				return;
+			}
+			if (choice == Choice.OVERWRITE) {
+				targetSet.clear();
+				store.removeAll();
+			}
+			for (Target target : loaded) {
+				if (targetSet.add(target)) {
+					store.add(target);
 				}
-				targetSet.add(target);
 			}
 			break;
 		default:
@@ -492,8 +759,13 @@ public class Controller {
 		options.put("n", Choice.NO);
 
 		if (Helper.getUserChoice(message, options) == Choice.YES) {
-			Helper.save(TARGET_LIST_PATH, Helper.gson.toJson(targetSet));
-			System.out.println("Target list saved.");
+			try {
+				store.save(targetSet);
+				System.out.println("Target list saved.");
+			} catch (IOException e) {
+				e.printStackTrace();
+				System.out.println("Failed to save target list, the file is left as it was.");
+			}
 		}
 	}
 
@@ -567,12 +839,13 @@ public class Controller {
 		options.put("n", Choice.NO);
 		if (Helper.getUserChoice(message, options) == Choice.YES) {
 			targetSet.clear();
+			store.removeAll();
 			failedTargetSet.clear();
 		}
 		message = "";
 		message += "Do you want to remove target list file? (y/n)%n";
 		if (Helper.getUserChoice(message, options) == Choice.YES) {
-			Helper.remove(TARGET_LIST_PATH);
+			store.delete();
 		}
 	}
 
@@ -594,15 +867,96 @@ public class Controller {
 		}
 	}
 
+	/**
+	 * If the journal shows a download interrupted by a crash, it asks user
+	 * whether to resume it. If so, targets not done yet are put into the
+	 * target list, with info already fetched, and the next download skips
+	 * targets done before. Otherwise the journal is cleared.
+	 * 
+	 * @throws IOException
+	 */
+	protected static void resumeJournal() throws IOException {
+		if (!journal.replay()) {
+			return;
+		}
+		List<Target> unfinished = journal.getUnfinished();
+		if (unfinished.isEmpty()) {
+			journal.clear();
+			return;
+		}
+		String message = "";
+		message += "An interrupted download of %d unfinished targets has been found.%n";
+		message += "Do you want to resume it? (y/n)%n";
+		message = String.format(message, unfinished.size());
+		Map<String, Choice> options = new HashMap<String, Choice>();
+		options.put("y", Choice.YES);
+		options.put("n", Choice.NO);
+		if (Helper.getUserChoice(message, options) == Choice.YES) {
+			for (Target target : unfinished) {
+				if (targetSet.add(target)) {
+					store.add(target);
+				}
+			}
+			System.out.println("They have been added into the target list, start downloading to resume.");
+		} else {
+			journal.clear();
+		}
+	}
+
 	protected static void displayExit() {
 		System.out.println("Exit. Thank you!");
 	}
 
 	public static void main(String[] args) {
+		if (Arrays.asList(args).contains(METRICS_FLAG)) {
+			metricsJsonPath = METRICS_JSON_PATH;
+			metricsPrometheusPath = METRICS_PROMETHEUS_PATH;
+		}
 		try {
 			YouGet.setExecutable(LOCATION, PORTABLE);
 			YouGet.setCharset(CHARSET);
+			Execution.setMode(EXECUTION_MODE);
+			if (METADATA_CACHE_PATH != null) {
+				MetadataCache cache = new MetadataCache(TimeUnit.DAYS.toMillis(METADATA_CACHE_DAYS),
+						METADATA_CACHE_SIZE);
+				cache.load(METADATA_CACHE_PATH);
+				YouGet.setMetadataCache(cache);
+			}
+			if (WORKER_POOL) {
+				YouGet.setTransport(
+						new WorkerPoolTransport(Arrays.asList(WORKER_COMMAND), WORKER_POOL_SIZE, WORKER_MAX_JOBS,
+								TimeUnit.MINUTES.toMillis(WORKER_JOB_TIMEOUT)));
+			} else if (REDIRECT_DOWNLOAD_OUTPUT) {
+				YouGet.setTransport(new ProcessTransport(DOWNLOAD_LOG_DIRECTORY));
+			}
+			if (REDIRECT_DOWNLOAD_OUTPUT) {
+				YouGet.setDownloadOutput(Transport.Output.REDIRECT);
+			}
 			loadSetting();
+			if (TARGET_LOG) {
+				store = new LogTargetStore(TARGET_LOG_PATH);
+				if (store.load(targetSet)) {
+					System.out.printf("%d URLs in target list now.%n", targetSet.size());
+				}
+			} else {
+				store = new JsonTargetStore(TARGET_LIST_PATH);
+			}
+			YouGet.setTargetStore(store);
+			String journalPath = setting != null ? setting.journalPath : DEFAULT_JOURNAL_PATH;
+			if (!journalPath.equals("")) {
+				journal = new Journal(journalPath);
+				resumeJournal();
+			}
+			String historyPath = setting != null ? setting.historyPath : DEFAULT_DOWNLOAD_HISTORY_PATH;
+			if (!historyPath.equals("")) {
+				history = new DownloadHistory(historyPath);
+				try {
+					history.load();
+				} catch (IOException e) {
+					e.printStackTrace();
+					history = null;
+				}
+			}
 
 			boolean again = true;
 			do {
@@ -663,6 +1017,14 @@ public class Controller {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
+		} finally {
+			if (store != null) {
+				store.close();
+			}
+			if (journal != null) {
+				journal.close();
+			}
+			YouGet.getTransport().close();
 		}
 	}
 
@@ -0,0 +1,307 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A persistent history of targets downloaded successfully, by their canonical
+ * URLs, with the path each of them has been downloaded into and the time.
+ *
+ * The history is a file of lines "url TAB path TAB time" sorted by URL. Only a
+ * Bloom filter of all URLs and a sparse index of every INDEX_INTERVAL-th line
+ * are kept in memory. Most URLs never downloaded are ruled out by the Bloom
+ * filter alone, and any other lookup reads one block of at most
+ * INDEX_INTERVAL lines from the file at once.
+ *
+ * New entries are kept in memory until save() merges them into the file,
+ * which is rewritten into a temporary file and moved over it. Until then each
+ * of them is also appended to a pending file next to the history and flushed
+ * at once, so that load() still finds the targets downloaded before a crash.
+ * A line of the pending file cut short by a crash is ignored.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class DownloadHistory {
+	private static final int INDEX_INTERVAL = 64;
+	private static final double FALSE_POSITIVE = 0.01;
+	private static final String PENDING_SUFFIX = ".pending";
+	private final File file;
+	// entries added since the last save, in the order they were added
+	private final File pending;
+	private Writer pendingWriter;
+	private BloomFilter filter;
+	// capacity the filter has been sized for
+	private int capacity;
+	private int size = 0;
+	// first URL and file offset of every INDEX_INTERVAL-th line
+	private final List<String> indexKeys = new ArrayList<String>();
+	private final List<Long> indexOffsets = new ArrayList<Long>();
+	// file offset where the last block ends
+	private long length = 0;
+	// entries added since the last save
+	private final TreeMap<String, Entry> added = new TreeMap<String, Entry>();
+
+	public static final class Entry {
+		private final String path;
+		private final long time;
+
+		Entry(String path, long time) {
+			this.path = path;
+			this.time = time;
+		}
+
+		public final String getPath() {
+			return path;
+		}
+
+		/**
+		 * @return time of the download in milliseconds
+		 */
+		public final long getTime() {
+			return time;
+		}
+	}
+
+	public DownloadHistory(String filename) {
+		this.file = new File(filename).getAbsoluteFile();
+		this.pending = new File(file.getPath() + PENDING_SUFFIX);
+	}
+
+	/**
+	 * Read the history file to build the Bloom filter and the index, and the
+	 * entries not merged into it yet from the pending file.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized final void load() throws IOException {
+		loadPending();
+		indexKeys.clear();
+		indexOffsets.clear();
+		size = 0;
+		length = 0;
+		if (file.isFile()) {
+			// counted first so the filter is sized for the whole history
+			try (BufferedReader reader = newReader()) {
+				while (reader.readLine() != null) {
+					size++;
+				}
+			}
+		}
+		capacity = Math.max(1024, 2 * (size + added.size()));
+		filter = new BloomFilter(capacity, FALSE_POSITIVE);
+		if (size > 0) {
+			long offset = 0;
+			int line = 0;
+			try (BufferedReader reader = newReader()) {
+				String s;
+				while ((s = reader.readLine()) != null) {
+					String url = s.substring(0, Math.max(0, s.indexOf('\t')));
+					filter.put(url);
+					if (line++ % INDEX_INTERVAL == 0) {
+						indexKeys.add(url);
+						indexOffsets.add(offset);
+					}
+					offset += s.getBytes(StandardCharsets.UTF_8).length + 1;
+				}
+			}
+			length = offset;
+		}
+		for (String url : added.keySet()) {
+			filter.put(url);
+		}
+	}
+
+	private final void loadPending() throws IOException {
+		Helper.readCompleteLines(pending, new Helper.LineHandler() {
+			@Override
+			public void handle(String line) {
+				String[] fields = line.split("\t", 3);
+				if (fields.length < 3) {
+					// not an entry
+					return;
+				}
+				try {
+					added.put(fields[0], new Entry(fields[1], Long.parseLong(fields[2])));
+				} catch (NumberFormatException e) {
+					// not an entry
+				}
+			}
+		});
+	}
+
+	private BufferedReader newReader() throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param target
+	 * @return the entry of the given target, or null if it has never been
+	 *         downloaded
+	 */
+	public synchronized final Entry get(Target target) {
+		String url = target.getUrlString();
+		if (filter == null || !filter.mightContain(url)) {
+			return null;
+		}
+		Entry entry = added.get(url);
+		if (entry != null) {
+			return entry;
+		}
+		int i = Collections.binarySearch(indexKeys, url);
+		if (i < 0) {
+			// the block starting before the URL
+			i = -i - 2;
+			if (i < 0) {
+				return null;
+			}
+		}
+		// the whole block is read at once and split into lines in memory
+		byte[] block;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long start = indexOffsets.get(i);
+			long end = i + 1 < indexOffsets.size() ? indexOffsets.get(i + 1) : Math.min(length, raf.length());
+			block = new byte[(int) Math.max(0, end - start)];
+			raf.seek(start);
+			raf.readFully(block);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		try {
+			for (int from = 0; from < block.length;) {
+				int to = from;
+				while (to < block.length && block[to] != '\n') {
+					to++;
+				}
+				String line = new String(block, from, to - from, StandardCharsets.UTF_8);
+				from = to + 1;
+				String[] fields = line.split("\t", 3);
+				int c = fields[0].compareTo(url);
+				if (c == 0 && fields.length == 3) {
+					return new Entry(fields[1], Long.parseLong(fields[2]));
+				} else if (c > 0) {
+					return null;
+				}
+			}
+		} catch (NumberFormatException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Record that the given target has been downloaded into the given path,
+	 * and append it to the pending file.
+	 *
+	 * @param target
+	 * @param path
+	 */
+	public synchronized final void add(Target target, String path) {
+		String url = target.getUrlString();
+		Entry entry = new Entry(path.replace('\t', ' ').replace('\n', ' '), System.currentTimeMillis());
+		added.put(url, entry);
+		if (filter == null) {
+			filter = new BloomFilter(capacity = 1024, FALSE_POSITIVE);
+		}
+		filter.put(url);
+		try {
+			if (pendingWriter == null) {
+				pendingWriter = Helper.openAppend(pending);
+			}
+			write(pendingWriter, url, entry);
+			pendingWriter.flush();
+		} catch (IOException e) {
+			// still merged by the next save
+			e.printStackTrace();
+		}
+	}
+
+	private final void closePending() {
+		if (pendingWriter != null) {
+			try {
+				pendingWriter.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			pendingWriter = null;
+		}
+	}
+
+	/**
+	 * Merge the entries added since the last save into the history file, and
+	 * remove the pending file.
+	 *
+	 * @throws IOException
+	 *             if failed to write, the file is left as it was
+	 */
+	public synchronized final void save() throws IOException {
+		if (added.isEmpty()) {
+			return;
+		}
+		Helper.writeAtomically(file, new Helper.Content() {
+			@Override
+			public void writeTo(Writer writer) throws IOException {
+				Iterator<Map.Entry<String, Entry>> it = added.entrySet().iterator();
+				Map.Entry<String, Entry> next = it.hasNext() ? it.next() : null;
+				if (file.isFile()) {
+					try (BufferedReader reader = newReader()) {
+						String line;
+						while ((line = reader.readLine()) != null) {
+							String url = line.substring(0, Math.max(0, line.indexOf('\t')));
+							while (next != null && next.getKey().compareTo(url) < 0) {
+								write(writer, next);
+								next = it.hasNext() ? it.next() : null;
+							}
+							if (next != null && next.getKey().equals(url)) {
+								// downloaded again, the new entry replaces it
+								continue;
+							}
+							writer.write(line);
+							writer.write('\n');
+						}
+					}
+				}
+				while (next != null) {
+					write(writer, next);
+					next = it.hasNext() ? it.next() : null;
+				}
+			}
+		});
+		added.clear();
+		closePending();
+		pending.delete();
+		load();
+	}
+
+	private static void write(Writer writer, Map.Entry<String, Entry> entry) throws IOException {
+		write(writer, entry.getKey(), entry.getValue());
+	}
+
+	private static void write(Writer writer, String url, Entry entry) throws IOException {
+		writer.write(url);
+		writer.write('\t');
+		writer.write(entry.path);
+		writer.write('\t');
+		writer.write(Long.toString(entry.time));
+		writer.write('\n');
+	}
+
+	public synchronized final int size() {
+		return size + added.size();
+	}
+
+}
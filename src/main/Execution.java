@@ -0,0 +1,105 @@
+package main;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * It creates the threads running YouGet tasks and reading their processes,
+ * either as platform threads or as virtual threads.
+ *
+ * Virtual threads are looked up by reflection so that the program still runs
+ * on a Java version without them, in which case the platform mode is used.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class Execution {
+	private static final Method OF_VIRTUAL;
+	private static final Method UNSTARTED;
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+	private static Mode mode = Mode.PLATFORM;
+
+	public static enum Mode {
+		PLATFORM, VIRTUAL;
+	}
+
+	static {
+		Method ofVirtual = null;
+		Method unstarted = null;
+		Method newExecutor = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			unstarted = ofVirtual.getReturnType().getMethod("unstarted", Runnable.class);
+			newExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		UNSTARTED = unstarted;
+		NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newExecutor;
+	}
+
+	private Execution() {
+	}
+
+	public static final boolean isVirtualSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	public static final Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Set the mode of threads created from now on. If virtual threads are not
+	 * supported by the running Java version, the platform mode is kept.
+	 *
+	 * @param mode
+	 */
+	public static final void setMode(Mode mode) {
+		if (mode == Mode.VIRTUAL && !isVirtualSupported()) {
+			synchronized (Controller.printLock) {
+				System.err.println("Virtual threads are not supported, platform threads are used instead.");
+			}
+			mode = Mode.PLATFORM;
+		}
+		Execution.mode = mode;
+	}
+
+	/**
+	 * @return an executor starting each submitted task as soon as possible,
+	 *         the number of running tasks is up to the caller to control
+	 */
+	public static final ExecutorService newTaskExecutor() {
+		if (mode == Mode.VIRTUAL) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				synchronized (Controller.printLock) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * @param task
+	 * @return a thread which is not started yet and will run the given task
+	 */
+	public static final Thread newThread(Runnable task) {
+		if (mode == Mode.VIRTUAL) {
+			try {
+				return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), task);
+			} catch (ReflectiveOperationException e) {
+				synchronized (Controller.printLock) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return new Thread(task);
+	}
+
+}
@@ -0,0 +1,76 @@
+package main;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Kinds of failures of a YouGet task, telling whether it is worth running it
+ * again.
+ *
+ * A failed You-Get process is classified by fingerprints of well-known errors
+ * in its stderr, and by its exit value if none of them matches.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public enum Failure {
+	// it will fail the same way however many times it is run
+	PERMANENT,
+	// it may succeed if run again a bit later
+	TRANSIENT,
+	// the site refuses to serve more requests for now
+	THROTTLED;
+
+	private static final Pattern THROTTLED_ERROR = Pattern.compile(
+			"HTTP Error 429|Too Many Requests|rate.?limit|throttl|quota exceeded|try again later",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern PERMANENT_ERROR = Pattern.compile("HTTP Error (400|401|403|404|410|451)|Not Found|"
+			+ "Forbidden|Unsupported URL|not supported|unrecognized arguments|Invalid URL|unknown url type|"
+			+ "video (is )?(unavailable|private|deleted)|copyright|not available in your (country|region)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern TRANSIENT_ERROR = Pattern.compile("HTTP Error 5\\d\\d|timed? ?out|"
+			+ "Connection (reset|refused|aborted)|Remote end closed|IncompleteRead|Name or service not known|"
+			+ "Temporary failure in name resolution|Network is unreachable|SSL|EOF occurred", Pattern.CASE_INSENSITIVE);
+	// exit value of You-Get on invalid command line arguments
+	private static final int USAGE_ERROR = 2;
+
+	/**
+	 * @param exitValue
+	 *            exit value of a failed You-Get process
+	 * @param error
+	 *            stderr of the process, may be null
+	 * @return the kind of the failure
+	 */
+	public static final Failure classify(int exitValue, String error) {
+		if (error != null) {
+			if (THROTTLED_ERROR.matcher(error).find()) {
+				return THROTTLED;
+			} else if (PERMANENT_ERROR.matcher(error).find()) {
+				return PERMANENT;
+			} else if (TRANSIENT_ERROR.matcher(error).find()) {
+				return TRANSIENT;
+			}
+		}
+		if (exitValue == USAGE_ERROR) {
+			return PERMANENT;
+		}
+		// e.g. killed by a signal or crashed for an unknown reason
+		return TRANSIENT;
+	}
+
+	/**
+	 * @param e
+	 *            an exception thrown when running You-Get through a transport
+	 * @return PERMANENT if You-Get cannot be found, or TRANSIENT for other
+	 *         errors like failing to spawn a process or a dead worker
+	 */
+	public static final Failure classify(IOException e) {
+		if (e instanceof FileNotFoundException) {
+			return PERMANENT;
+		}
+		return TRANSIENT;
+	}
+
+}
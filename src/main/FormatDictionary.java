@@ -0,0 +1,64 @@
+package main;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global dictionary of format names. Each distinct name gets a small index
+ * once, so a target only keeps a bitset of the indexes of its formats instead
+ * of a set of strings. There are only a few dozen distinct format names
+ * however many targets there are.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class FormatDictionary {
+	private static final Map<String, Integer> indexes = new ConcurrentHashMap<String, Integer>();
+	// replaced by a longer copy when a name is added
+	private static volatile String[] names = new String[0];
+
+	private FormatDictionary() {
+	}
+
+	/**
+	 * @param name
+	 * @return the index of the given name, added if it is new
+	 */
+	public static final int intern(String name) {
+		Integer index = indexes.get(name);
+		if (index != null) {
+			return index;
+		}
+		synchronized (FormatDictionary.class) {
+			index = indexes.get(name);
+			if (index == null) {
+				String[] copy = new String[names.length + 1];
+				System.arraycopy(names, 0, copy, 0, names.length);
+				index = names.length;
+				copy[index] = name;
+				names = copy;
+				indexes.put(name, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return the index of the given name, or -1 if it has never been added
+	 */
+	public static final int find(String name) {
+		Integer index = indexes.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * @param index
+	 * @return the name of the given index
+	 */
+	public static final String get(int index) {
+		return names[index];
+	}
+
+}
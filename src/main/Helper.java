@@ -6,13 +6,19 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -33,6 +39,20 @@ public final class Helper {
 	public static final JsonParser jsonParser = new JsonParser();
 	public static final Gson gson = new Gson();
 
+	/**
+	 * Called on each line read by readCompleteLines.
+	 */
+	public static interface LineHandler {
+		void handle(String line) throws IOException;
+	}
+
+	/**
+	 * Writes the content of a file written by writeAtomically.
+	 */
+	public static interface Content {
+		void writeTo(Writer writer) throws IOException;
+	}
+
 	private static final class ExecutableFileFilter implements FileFilter {
 		private static final String EXECUTABLE_PATTERN = "[\\S]+(\\.(?i)(exe))$";
 		private static final Pattern P = Pattern.compile(EXECUTABLE_PATTERN);
@@ -112,6 +132,35 @@ public final class Helper {
 		return options.get(line);
 	}
 
+	/**
+	 * Keep asking the user until a positive integer is entered.
+	 * 
+	 * @param message
+	 *            the message to display before each reading
+	 * @param defaultValue
+	 *            the value to return if the user enters an empty line
+	 * @return the positive integer entered by the user or defaultValue
+	 * @throws IOException
+	 */
+	public static int getUserPositiveInteger(String message, int defaultValue) throws IOException {
+		String line;
+		while (true) {
+			System.out.printf(message);
+			line = input.readLine().trim();
+			if (line.equals("")) {
+				return defaultValue;
+			}
+			try {
+				int value = Integer.parseInt(line);
+				if (value > 0) {
+					return value;
+				}
+			} catch (NumberFormatException e) {
+				// ask again
+			}
+		}
+	}
+
 	public static final String load(String filename) {
 		StringBuilder sb = new StringBuilder();
 		String line;
@@ -148,4 +197,148 @@ public final class Helper {
 		}
 	}
 
+	/**
+	 * Move the source file over the target file, atomically if the file
+	 * system supports it.
+	 *
+	 * @param source
+	 * @param target
+	 * @throws IOException
+	 */
+	public static final void replace(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Open the given UTF-8 file of lines for appending. A last line cut short
+	 * by a crash, i.e. without its line break, is dropped first, so that new
+	 * lines are never joined to it.
+	 *
+	 * @param file
+	 * @return a writer appending to the file
+	 * @throws IOException
+	 */
+	public static final Writer openAppend(File file) throws IOException {
+		if (file.isFile()) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				long end = raf.length();
+				long keep = end;
+				byte[] buffer = new byte[8192];
+				// back to the last line break
+				while (keep > 0) {
+					int count = (int) Math.min(buffer.length, keep);
+					raf.seek(keep - count);
+					raf.readFully(buffer, 0, count);
+					int i = count - 1;
+					while (i >= 0 && buffer[i] != '\n') {
+						i--;
+					}
+					keep -= count - i - 1;
+					if (i >= 0) {
+						break;
+					}
+				}
+				if (keep < end) {
+					raf.setLength(keep);
+				}
+			}
+		}
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Read the given UTF-8 file line by line. A last line cut short by a
+	 * crash, i.e. without its line break, is left out.
+	 *
+	 * @param file
+	 * @param handler
+	 *            called on each complete line, without its line break
+	 * @return false if there is no such file
+	 * @throws IOException
+	 */
+	public static final boolean readCompleteLines(File file, LineHandler handler) throws IOException {
+		if (!file.isFile()) {
+			return false;
+		}
+		try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			StringBuilder line = new StringBuilder();
+			char[] buffer = new char[8192];
+			int count;
+			while ((count = reader.read(buffer)) != -1) {
+				int start = 0;
+				for (int i = 0; i < count; i++) {
+					if (buffer[i] == '\n') {
+						line.append(buffer, start, i - start);
+						handler.handle(line.toString());
+						line.setLength(0);
+						start = i + 1;
+					}
+				}
+				line.append(buffer, start, count - start);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Write the given file as a whole into a temporary file next to it, sync
+	 * it to the disk and move it over the file, so that a crash leaves either
+	 * the old file or the new one.
+	 *
+	 * @param file
+	 * @param content
+	 * @throws IOException
+	 *             if the file cannot be written, the file is left as it was
+	 */
+	public static final void writeAtomically(File file, Content content) throws IOException {
+		file = file.getAbsoluteFile();
+		File temp = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+		try {
+			try (FileOutputStream out = new FileOutputStream(temp);
+					Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+				content.writeTo(writer);
+				writer.flush();
+				out.getFD().sync();
+			}
+			replace(temp, file);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Rename the source folder to the target folder, atomically if the target
+	 * does not exist yet. Otherwise files in the source are moved into the
+	 * target one by one, replacing those of the same names, and the source is
+	 * deleted.
+	 *
+	 * @param source
+	 * @param target
+	 * @throws IOException
+	 */
+	public static final void moveFolder(File source, File target) throws IOException {
+		if (!target.exists()) {
+			try {
+				Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				return;
+			} catch (AtomicMoveNotSupportedException e) {
+				// moved file by file below
+			}
+		}
+		target.mkdirs();
+		File[] files = source.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				Files.move(file.toPath(), new File(target, file.getName()).toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Files.delete(source.toPath());
+	}
+
 }
@@ -0,0 +1,95 @@
+package main;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * It pauses a host after tasks of it have been throttled THRESHOLD times in a
+ * row, so that no more tasks of that host are started while the site is
+ * refusing them. The pause doubles each time the host is paused again without
+ * any success in between, up to MAX_PAUSE. Any task of the host that does not
+ * end up throttled resets it.
+ *
+ * Like HostLimiter, it is only used by the dispatching thread of a Scheduler.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class HostCircuitBreaker {
+	private static final int THRESHOLD = 3;
+	// milliseconds
+	private static final long PAUSE = 60000;
+	private static final long MAX_PAUSE = 900000;
+
+	private static final class State {
+		int throttled = 0;
+		int pauses = 0;
+		long pausedUntil = 0;
+	}
+
+	private final Map<String, State> states = new HashMap<String, State>();
+
+	private static String getKey(Target target) {
+		return target.getHost();
+	}
+
+	/**
+	 * @param target
+	 * @param now
+	 *            current time in milliseconds
+	 * @return true if the host of the given target is paused
+	 */
+	public final boolean isOpen(Target target, long now) {
+		State state = states.get(getKey(target));
+		return state != null && state.pausedUntil > now;
+	}
+
+	/**
+	 * Record how a task of the given target has ended.
+	 *
+	 * @param target
+	 * @param failure
+	 *            the failure of the task, null if it has succeeded
+	 * @param now
+	 *            current time in milliseconds
+	 * @return true if the host is paused because of this task
+	 */
+	public final boolean record(Target target, Failure failure, long now) {
+		String key = getKey(target);
+		if (failure != Failure.THROTTLED) {
+			states.remove(key);
+			return false;
+		}
+		State state = states.get(key);
+		if (state == null) {
+			state = new State();
+			states.put(key, state);
+		}
+		if (++state.throttled < THRESHOLD) {
+			return false;
+		}
+		long pause = Math.min(MAX_PAUSE, PAUSE << Math.min(state.pauses, 20));
+		state.pauses++;
+		state.throttled = 0;
+		state.pausedUntil = now + pause;
+		return true;
+	}
+
+	/**
+	 * @param now
+	 *            current time in milliseconds
+	 * @return the earliest time in milliseconds a paused host is resumed, or
+	 *         Long.MAX_VALUE if no host is paused
+	 */
+	public final long getNextResume(long now) {
+		long next = Long.MAX_VALUE;
+		for (State state : states.values()) {
+			if (state.pausedUntil > now) {
+				next = Math.min(next, state.pausedUntil);
+			}
+		}
+		return next;
+	}
+
+}
@@ -0,0 +1,115 @@
+package main;
+
+import java.util.Map;
+import java.util.HashMap;
+
+/**
+ * It keeps track of how many tasks are running for each host and refuses to
+ * let more of them run than the limit configured for that host. Hosts without
+ * a configured limit are only bound by the global limit of the Scheduler.
+ *
+ * A configured host also covers all of its subdomains, so a limit for
+ * "bilibili.com" applies to "www.bilibili.com" and "m.bilibili.com" together.
+ *
+ * It is only used by the dispatching thread of a Scheduler, so plain counters
+ * are enough and no locking is needed.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class HostLimiter {
+	private final Map<String, Integer> limits = new HashMap<String, Integer>();
+	private final Map<String, Integer> running = new HashMap<String, Integer>();
+
+	/**
+	 * @param limits
+	 *            maximum number of running tasks for each host, every limit is
+	 *            at least 1
+	 */
+	public HostLimiter(Map<String, Integer> limits) {
+		if (limits != null) {
+			for (Map.Entry<String, Integer> entry : limits.entrySet()) {
+				this.limits.put(entry.getKey().toLowerCase(), Math.max(1, entry.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Find the configured host covering the host of the given target.
+	 *
+	 * @param target
+	 * @return the configured host or null if the host of the target is not
+	 *         limited
+	 */
+	private final String getKey(Target target) {
+		if (limits.isEmpty()) {
+			return null;
+		}
+		String host = target.getHost();
+		while (true) {
+			if (limits.containsKey(host)) {
+				return host;
+			}
+			int dot = host.indexOf('.');
+			if (dot < 0) {
+				return null;
+			}
+			host = host.substring(dot + 1);
+		}
+	}
+
+	/**
+	 * @param target
+	 * @return true if the host of the given target has a free slot
+	 */
+	public final boolean hasFreeSlot(Target target) {
+		String key = getKey(target);
+		if (key == null) {
+			return true;
+		}
+		Integer count = running.get(key);
+		return count == null || count < limits.get(key);
+	}
+
+	/**
+	 * Take a slot of the host of the given target if there is one free.
+	 *
+	 * @param target
+	 * @return true if the task of the target is allowed to start
+	 */
+	public final boolean tryAcquire(Target target) {
+		String key = getKey(target);
+		if (key == null) {
+			return true;
+		}
+		Integer count = running.get(key);
+		if (count == null) {
+			count = 0;
+		}
+		if (count >= limits.get(key)) {
+			return false;
+		}
+		running.put(key, count + 1);
+		return true;
+	}
+
+	/**
+	 * Give back the slot taken by tryAcquire(Target target).
+	 *
+	 * @param target
+	 */
+	public final void release(Target target) {
+		String key = getKey(target);
+		if (key == null) {
+			return;
+		}
+		Integer count = running.get(key);
+		if (count != null && count > 1) {
+			running.put(key, count - 1);
+		} else {
+			running.remove(key);
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * It reads the Json data printed by YouGet --json as a stream and pulls out
+ * only the URL, the title and the names and sizes of the streams of each
+ * object. All other values are skipped without being built, so the whole
+ * output is never held in memory. Several objects printed one after another,
+ * as done for a batch of URLs, are read one by one.
+ *
+ * Closing it reads the rest of the output, so that the process printing it is
+ * never blocked on a full pipe.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class InfoReader implements Closeable {
+	private final Reader in;
+	private final JsonReader reader;
+
+	/**
+	 * Info of a single URL read from the output.
+	 */
+	public static final class Info {
+		private String url;
+		private String title;
+		private List<String> formats = new ArrayList<String>();
+		// size in bytes of the stream of each format, -1 if unknown
+		private List<Long> sizes = new ArrayList<Long>();
+
+		public final String getUrl() {
+			return url;
+		}
+
+		public final String getTitle() {
+			return title;
+		}
+
+		public final List<String> getFormats() {
+			return formats;
+		}
+
+		/**
+		 * @return sizes in bytes of the streams in the same order as
+		 *         getFormats(), -1 if unknown
+		 */
+		public final List<Long> getSizes() {
+			return sizes;
+		}
+
+	}
+
+	public InfoReader(Reader in) {
+		this.in = in;
+		this.reader = new JsonReader(in);
+		// objects printed one after another are not a single Json document
+		this.reader.setStrictness(Strictness.LENIENT);
+	}
+
+	/**
+	 * Read the next object in the output. Any value which is not an object is
+	 * skipped.
+	 *
+	 * @return info read from the next object or null if the output has ended
+	 * @throws IOException
+	 *             if failed to read the output or the output is not valid Json
+	 */
+	public final Info next() throws IOException {
+		while (true) {
+			JsonToken token = reader.peek();
+			if (token == JsonToken.END_DOCUMENT) {
+				return null;
+			}
+			if (token != JsonToken.BEGIN_OBJECT) {
+				reader.skipValue();
+				continue;
+			}
+			Info info = new Info();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if (name.equals("url") && reader.peek() == JsonToken.STRING) {
+					info.url = reader.nextString();
+				} else if (name.equals("title") && reader.peek() == JsonToken.STRING) {
+					info.title = reader.nextString();
+				} else if (name.equals("streams") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						info.formats.add(reader.nextName());
+						info.sizes.add(readSize());
+					}
+					reader.endObject();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+			return info;
+		}
+	}
+
+	/**
+	 * Read the value of a stream, keeping only its size.
+	 *
+	 * @return the size in bytes or -1 if there is none
+	 */
+	private long readSize() throws IOException {
+		long size = -1;
+		if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+			reader.skipValue();
+			return size;
+		}
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if (reader.nextName().equals("size") && reader.peek() == JsonToken.NUMBER) {
+				size = (long) reader.nextDouble();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return size;
+	}
+
+	/**
+	 * Read and drop the rest of the output, then close it.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			char[] buffer = new char[8192];
+			while (in.read(buffer) != -1) {
+				// drop
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * An append-only journal of the state of each target during a download, so
+ * that a download interrupted by a crash can be resumed with only the targets
+ * not done yet.
+ *
+ * Each state transition is appended as a line of Json and flushed at once.
+ * Replaying the file gives the latest state of each target, a line cut short
+ * by a crash is ignored. Once there are COMPACT_THRESHOLD records more than
+ * targets, the journal is compacted into the latest record of each target,
+ * written into a temporary file and moved over the journal.
+ *
+ * It is a ProgressListener, so it records the dispatch and finish of downloads
+ * while it is registered on Controller.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class Journal implements ProgressListener {
+	private static final int COMPACT_THRESHOLD = 10000;
+	private final File file;
+	private final Map<String, Record> latest = new LinkedHashMap<String, Record>();
+	private int records = 0;
+	private Writer writer;
+
+	public static enum State {
+		QUEUED, INFO_DONE, DOWNLOADING, DONE, FAILED;
+	}
+
+	private static final class Record {
+		private String url;
+		private State state;
+		// only for INFO_DONE
+		private String title;
+		private List<String> formats;
+		private Map<String, Long> sizes;
+		private long time;
+	}
+
+	/**
+	 * @param filename
+	 *            path of the journal file
+	 */
+	public Journal(String filename) {
+		this.file = new File(filename);
+	}
+
+	/**
+	 * Read the latest state of each target from the journal file.
+	 *
+	 * @return true if the file has been read
+	 */
+	public synchronized final boolean replay() {
+		latest.clear();
+		records = 0;
+		try {
+			return Helper.readCompleteLines(file, new Helper.LineHandler() {
+				@Override
+				public void handle(String line) {
+					Record record;
+					try {
+						record = Helper.gson.fromJson(line, Record.class);
+					} catch (JsonParseException e) {
+						// not written by this class
+						return;
+					}
+					if (record != null && record.url != null && record.state != null) {
+						put(record);
+					}
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @param target
+	 * @return the latest state of the given target, or null if it is not in
+	 *         the journal
+	 */
+	public synchronized final State getState(Target target) {
+		Record record = latest.get(target.getUrlString());
+		return record == null ? null : record.state;
+	}
+
+	/**
+	 * @return targets in the journal not done yet, with their titles and
+	 *         formats if their info has been fetched
+	 */
+	public synchronized final List<Target> getUnfinished() {
+		List<Target> targets = new ArrayList<Target>();
+		for (Record record : latest.values()) {
+			if (record.state == State.DONE) {
+				continue;
+			}
+			try {
+				Target target = new Target(record.url, record.title);
+				if (record.formats != null) {
+					for (String format : record.formats) {
+						Long size = record.sizes != null ? record.sizes.get(format) : null;
+						target.addFormat(format, size != null ? size : -1);
+					}
+				}
+				targets.add(target);
+			} catch (MalformedURLException e) {
+				// not written by this class
+			}
+		}
+		return targets;
+	}
+
+	/**
+	 * Append a state transition of the given target and flush it.
+	 *
+	 * @param target
+	 * @param state
+	 */
+	public synchronized final void record(Target target, State state) {
+		Record record = new Record();
+		record.url = target.getUrlString();
+		record.state = state;
+		if (state == State.INFO_DONE) {
+			record.title = target.getTitle();
+			record.formats = new ArrayList<String>(target.getFormats());
+			record.sizes = target.getSizes();
+		}
+		record.time = System.currentTimeMillis();
+		try {
+			append(record);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		put(record);
+		if (records - latest.size() >= COMPACT_THRESHOLD) {
+			compact();
+		}
+	}
+
+	/**
+	 * Make the given record the latest one of its target, keeping the info
+	 * from an earlier record, and move the target to the end of the order.
+	 */
+	private final void put(Record record) {
+		Record last = latest.remove(record.url);
+		if (record.state != State.INFO_DONE && last != null) {
+			record.title = last.title;
+			record.formats = last.formats;
+			record.sizes = last.sizes;
+		}
+		latest.put(record.url, record);
+		records++;
+	}
+
+	private final void append(Record record) throws IOException {
+		if (writer == null) {
+			writer = Helper.openAppend(file);
+		}
+		writer.write(Helper.gson.toJson(record));
+		writer.write('\n');
+		writer.flush();
+	}
+
+	/**
+	 * Rewrite the journal with only the latest record of each target.
+	 */
+	public synchronized final void compact() {
+		close();
+		try {
+			Helper.writeAtomically(file, new Helper.Content() {
+				@Override
+				public void writeTo(Writer writer) throws IOException {
+					for (Record record : latest.values()) {
+						writer.write(Helper.gson.toJson(record));
+						writer.write('\n');
+					}
+				}
+			});
+			records = latest.size();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Forget all targets and remove the journal file, once there is nothing
+	 * to resume.
+	 */
+	public synchronized final void clear() {
+		close();
+		latest.clear();
+		records = 0;
+		file.delete();
+	}
+
+	public synchronized final void close() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			writer = null;
+		}
+	}
+
+	@Override
+	public void onStarted(Target target) {
+	}
+
+	@Override
+	public void onTaskStarted(YouGet task) {
+		// the first task of a target may only fetch its info
+		if (task.getTask() == YouGet.Task.DOWNLOAD && task.getAttempts() == 0) {
+			record(task.getTarget(), State.DOWNLOADING);
+		}
+	}
+
+	@Override
+	public void onProgress(ProgressEvent event) {
+	}
+
+	@Override
+	public void onFinished(Target target, boolean success) {
+		record(target, success ? State.DONE : State.FAILED);
+	}
+
+}
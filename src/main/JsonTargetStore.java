@@ -0,0 +1,62 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * It keeps the target list in a Json file through TargetListFile. Changes of
+ * the list are only persisted when the whole list is saved.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class JsonTargetStore implements TargetStore {
+	private final String filename;
+
+	public JsonTargetStore(String filename) {
+		this.filename = filename;
+	}
+
+	@Override
+	public boolean exists() {
+		return new File(filename).isFile();
+	}
+
+	@Override
+	public boolean load(Collection<Target> targets) throws IOException {
+		return TargetListFile.read(filename, targets);
+	}
+
+	@Override
+	public void save(Collection<Target> targets) throws IOException {
+		TargetListFile.write(filename, targets);
+	}
+
+	@Override
+	public void add(Target target) {
+	}
+
+	@Override
+	public void remove(Target target) {
+	}
+
+	@Override
+	public void update(Target target) {
+	}
+
+	@Override
+	public void removeAll() {
+	}
+
+	@Override
+	public void delete() {
+		Helper.remove(filename);
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
@@ -0,0 +1,342 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * It keeps the target list as an append-only log of Json lines, each line
+ * being a record of a change: a target added, removed or updated, or all
+ * targets removed. A change of the list only appends a small record instead
+ * of rewriting the whole list. Loading replays the log from the beginning.
+ *
+ * Records made dead by later ones, e.g. an added target removed afterwards,
+ * pile up in the log. Once there are more dead records than live targets,
+ * and at least COMPACT_THRESHOLD of them, a background thread compacts the
+ * log into an add record for each live target. The log is moved aside first,
+ * so changes made during the compaction go to a new log, and they are copied
+ * after the compacted records before it replaces the log. A crash during the
+ * compaction leaves both logs, which are replayed one after the other.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class LogTargetStore implements TargetStore {
+	private static final int COMPACT_THRESHOLD = 1000;
+	private final File file;
+	// the log being compacted
+	private final File old;
+	private Writer writer;
+	private int records = 0;
+	private int live = 0;
+	private Thread compactor;
+
+	private static final class Record {
+		private String op;
+		private String url;
+		private String title;
+		private List<String> formats;
+		private Map<String, Long> sizes;
+	}
+
+	public LogTargetStore(String filename) {
+		this.file = new File(filename).getAbsoluteFile();
+		this.old = new File(file.getPath() + ".old");
+	}
+
+	@Override
+	public synchronized boolean exists() {
+		return file.isFile() || old.isFile();
+	}
+
+	@Override
+	public boolean load(Collection<Target> targets) throws IOException {
+		Map<String, Target> replayed;
+		synchronized (this) {
+			waitForCompactor();
+			if (!exists()) {
+				return false;
+			}
+			replayed = new LinkedHashMap<String, Target>();
+			int count = replay(old, replayed) + replay(file, replayed);
+			if (old.isFile()) {
+				// left by a crash during a compaction
+				save(replayed.values());
+			} else if (writer == null) {
+				// not changed since
+				records = count;
+				live = replayed.size();
+			}
+		}
+		targets.addAll(replayed.values());
+		return true;
+	}
+
+	/**
+	 * Apply all records in the given log to the given targets.
+	 *
+	 * @return number of records read
+	 */
+	private static int replay(File log, final Map<String, Target> targets) throws IOException {
+		final int[] count = new int[1];
+		Helper.readCompleteLines(log, new Helper.LineHandler() {
+			@Override
+			public void handle(String line) {
+				Record record;
+				try {
+					record = Helper.gson.fromJson(line, Record.class);
+				} catch (JsonParseException e) {
+					// not written by this class
+					return;
+				}
+				if (record == null || record.op == null) {
+					return;
+				}
+				count[0]++;
+				if (record.op.equals("clear")) {
+					targets.clear();
+				} else if (record.op.equals("remove")) {
+					targets.remove(record.url);
+				} else if (record.op.equals("add") || record.op.equals("update")) {
+					Target target = targets.get(record.url);
+					if (target == null) {
+						if (record.op.equals("update")) {
+							return;
+						}
+						try {
+							target = new Target(record.url);
+						} catch (MalformedURLException e) {
+							throw new JsonParseException(e);
+						}
+						targets.put(record.url, target);
+					}
+					target.setTitle(record.title);
+					if (record.formats != null) {
+						for (String format : record.formats) {
+							Long size = record.sizes != null ? record.sizes.get(format) : null;
+							target.addFormat(format, size != null ? size : -1);
+						}
+					}
+				}
+			}
+		});
+		return count[0];
+	}
+
+	@Override
+	public synchronized void save(final Collection<Target> targets) throws IOException {
+		waitForCompactor();
+		closeWriter();
+		Helper.writeAtomically(file, new Helper.Content() {
+			@Override
+			public void writeTo(Writer writer) throws IOException {
+				for (Target target : targets) {
+					writer.write(toLine("add", target));
+				}
+			}
+		});
+		old.delete();
+		records = targets.size();
+		live = targets.size();
+	}
+
+	private static String toLine(String op, Target target) {
+		Record record = new Record();
+		record.op = op;
+		if (target != null) {
+			record.url = target.getUrlString();
+			if (!op.equals("remove")) {
+				record.title = target.getTitle();
+				record.formats = new ArrayList<String>(target.getFormats());
+				record.sizes = target.getSizes();
+			}
+		}
+		return Helper.gson.toJson(record) + "\n";
+	}
+
+	@Override
+	public void add(Target target) {
+		append(toLine("add", target), 1);
+	}
+
+	@Override
+	public void remove(Target target) {
+		append(toLine("remove", target), -1);
+	}
+
+	@Override
+	public void update(Target target) {
+		append(toLine("update", target), 0);
+	}
+
+	@Override
+	public void removeAll() {
+		synchronized (this) {
+			append(toLine("clear", null), -live);
+		}
+	}
+
+	/**
+	 * Append a record and flush it, then start compacting if there are too
+	 * many dead records.
+	 *
+	 * @param line
+	 * @param change
+	 *            change of the number of live targets made by the record
+	 */
+	private synchronized void append(String line, int change) {
+		try {
+			if (writer == null) {
+				writer = Helper.openAppend(file);
+			}
+			writer.write(line);
+			writer.flush();
+		} catch (IOException e) {
+			synchronized (Controller.printLock) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		records++;
+		live = Math.max(0, live + change);
+		int dead = records - live;
+		if (compactor == null && dead >= COMPACT_THRESHOLD && dead > live) {
+			startCompactor();
+		}
+	}
+
+	private final void startCompactor() {
+		closeWriter();
+		if (!old.exists() && !file.renameTo(old)) {
+			return;
+		}
+		compactor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				compact();
+			}
+		});
+		compactor.setDaemon(true);
+		compactor.start();
+	}
+
+	/**
+	 * Fold the moved log into add records of live targets, then put the
+	 * records appended to the new log since then after them.
+	 */
+	private final void compact() {
+		File temp = null;
+		try {
+			Map<String, Target> targets = new LinkedHashMap<String, Target>();
+			replay(old, targets);
+			temp = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+			try (Writer w = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8))) {
+				for (Target target : targets.values()) {
+					w.write(toLine("add", target));
+				}
+			}
+			synchronized (this) {
+				closeWriter();
+				int appended = 0;
+				try (FileOutputStream out = new FileOutputStream(temp, true)) {
+					if (file.isFile()) {
+						try (InputStream in = new FileInputStream(file)) {
+							appended = copy(in, out);
+						}
+					}
+					out.getFD().sync();
+				}
+				Helper.replace(temp, file);
+				old.delete();
+				records = targets.size() + appended;
+			}
+		} catch (IOException | JsonParseException e) {
+			// both logs are kept and replayed
+			synchronized (Controller.printLock) {
+				e.printStackTrace();
+			}
+		} finally {
+			if (temp != null) {
+				temp.delete();
+			}
+			synchronized (this) {
+				compactor = null;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return number of lines copied
+	 */
+	private static int copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		int lines = 0;
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			for (int i = 0; i < count; i++) {
+				if (buffer[i] == '\n') {
+					lines++;
+				}
+			}
+			out.write(buffer, 0, count);
+		}
+		return lines;
+	}
+
+	private synchronized void waitForCompactor() {
+		while (compactor != null) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private synchronized void closeWriter() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			writer = null;
+		}
+	}
+
+	@Override
+	public synchronized void delete() {
+		waitForCompactor();
+		closeWriter();
+		file.delete();
+		old.delete();
+		records = 0;
+		live = 0;
+	}
+
+	@Override
+	public void close() {
+		waitForCompactor();
+		closeWriter();
+	}
+
+}
@@ -0,0 +1,162 @@
+package main;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * It keeps the title and formats fetched for each URL, so that the info of a
+ * URL does not have to be fetched again by YouGet in later sessions. It is
+ * saved into its own file, separate from the target list. Entries are keyed by
+ * the canonical URLs of targets.
+ *
+ * Entries older than the time to live are ignored, and the least recently
+ * used entries are evicted once there are more entries than the capacity.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class MetadataCache {
+	private final long timeToLive;
+	private final int capacity;
+	private final LinkedHashMap<String, Entry> entries;
+
+	private static final class Entry {
+		private String url;
+		private String title;
+		private List<String> formats;
+		// known sizes of the formats, null in entries of older versions
+		private Map<String, Long> sizes;
+		private long fetched;
+	}
+
+	/**
+	 * @param timeToLive
+	 *            milliseconds an entry stays valid after being fetched
+	 * @param capacity
+	 *            maximum number of entries kept, at least 1
+	 */
+	public MetadataCache(long timeToLive, int capacity) {
+		this.timeToLive = timeToLive;
+		this.capacity = Math.max(1, capacity);
+		// access order makes the eldest entry the least recently used one
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > MetadataCache.this.capacity;
+			}
+		};
+	}
+
+	private final boolean isExpired(Entry entry) {
+		return System.currentTimeMillis() - entry.fetched > timeToLive;
+	}
+
+	/**
+	 * If there is a valid entry for the URL of the given target, set the title
+	 * and formats of the target from it.
+	 *
+	 * @param target
+	 * @return true if the target has been updated from the cache
+	 */
+	public synchronized final boolean apply(Target target) {
+		String key = target.getUrlString();
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return false;
+		}
+		if (isExpired(entry)) {
+			entries.remove(key);
+			return false;
+		}
+		target.setTitle(entry.title);
+		for (String format : entry.formats) {
+			Long size = entry.sizes != null ? entry.sizes.get(format) : null;
+			target.addFormat(format, size != null ? size : -1);
+		}
+		return true;
+	}
+
+	/**
+	 * Store the title and formats of the given target which have just been
+	 * fetched.
+	 *
+	 * @param target
+	 */
+	public synchronized final void put(Target target) {
+		Entry entry = new Entry();
+		entry.url = target.getUrlString();
+		entry.title = target.getTitle();
+		entry.formats = new ArrayList<String>(target.getFormats());
+		entry.sizes = target.getSizes();
+		entry.fetched = System.currentTimeMillis();
+		entries.put(entry.url, entry);
+	}
+
+	public synchronized final int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Load entries from the given file, expired entries are dropped.
+	 *
+	 * @param filename
+	 * @return true if the file has been loaded
+	 */
+	public synchronized final boolean load(String filename) {
+		String json = Helper.load(filename);
+		if (json == null) {
+			return false;
+		}
+		Entry[] loaded;
+		try {
+			loaded = Helper.gson.fromJson(json, Entry[].class);
+		} catch (JsonParseException e) {
+			synchronized (Controller.printLock) {
+				System.err.println("Invalid metadata cache file, it is ignored.");
+			}
+			return false;
+		}
+		if (loaded == null) {
+			return false;
+		}
+		// saved from the least to the most recently used
+		for (Entry entry : loaded) {
+			if (entry.url != null && entry.title != null && entry.formats != null && !isExpired(entry)) {
+				try {
+					// keyed like targets, older versions used other forms
+					entry.url = UrlCanonicalizer.canonicalize(new URL(entry.url));
+				} catch (MalformedURLException e) {
+					continue;
+				}
+				entries.put(entry.url, entry);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Save all valid entries into the given file, from the least to the most
+	 * recently used.
+	 *
+	 * @param filename
+	 */
+	public synchronized final void save(String filename) {
+		List<Entry> valid = new ArrayList<Entry>();
+		for (Entry entry : entries.values()) {
+			if (!isExpired(entry)) {
+				valid.add(entry);
+			}
+		}
+		Helper.save(filename, Helper.gson.toJson(valid));
+	}
+
+}
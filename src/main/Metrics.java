@@ -0,0 +1,279 @@
+package main;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * It collects counters and latency histograms of YouGet tasks during the
+ * whole program, and exports them as a Json file and a Prometheus text format
+ * file.
+ *
+ * Each series is identified by a metric name and label pairs, e.g.
+ * youget_task_seconds{task="INFO"}. Latencies are in seconds.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class Metrics {
+	// upper bounds of histogram buckets in seconds
+	private static final double[] BUCKETS = { 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300, 900, 3600 };
+	private static final ConcurrentMap<String, ConcurrentMap<Labels, AtomicLong>> counters = new ConcurrentHashMap<String, ConcurrentMap<Labels, AtomicLong>>();
+	private static final ConcurrentMap<String, ConcurrentMap<Labels, Histogram>> histograms = new ConcurrentHashMap<String, ConcurrentMap<Labels, Histogram>>();
+
+	private static final class Labels {
+		private final String[] pairs;
+
+		Labels(String[] pairs) {
+			this.pairs = pairs;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Labels && Arrays.equals(pairs, ((Labels) o).pairs);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(pairs);
+		}
+
+		/**
+		 * @param extra
+		 *            one more label in Prometheus format, may be null
+		 * @return labels in Prometheus format including braces, or an empty
+		 *         string if there are none
+		 */
+		String format(String extra) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i + 1 < pairs.length; i += 2) {
+				sb.append(sb.length() == 0 ? "" : ",");
+				sb.append(pairs[i]).append("=\"").append(pairs[i + 1].replace("\\", "\\\\").replace("\"", "\\\""))
+						.append('"');
+			}
+			if (extra != null) {
+				sb.append(sb.length() == 0 ? "" : ",").append(extra);
+			}
+			return sb.length() == 0 ? "" : "{" + sb + "}";
+		}
+
+		JsonObject toJson() {
+			JsonObject jo = new JsonObject();
+			for (int i = 0; i + 1 < pairs.length; i += 2) {
+				jo.addProperty(pairs[i], pairs[i + 1]);
+			}
+			return jo;
+		}
+	}
+
+	private static final class Histogram {
+		private final long[] counts = new long[BUCKETS.length + 1];
+		private long count = 0;
+		private double sum = 0;
+
+		synchronized void observe(double value) {
+			int i = 0;
+			while (i < BUCKETS.length && value > BUCKETS[i]) {
+				i++;
+			}
+			counts[i]++;
+			count++;
+			sum += value;
+		}
+
+		/**
+		 * @return cumulative counts of all buckets, the last one being +Inf,
+		 *         followed by the count and then the sum
+		 */
+		synchronized double[] snapshot() {
+			double[] snapshot = new double[counts.length + 2];
+			long cumulative = 0;
+			for (int i = 0; i < counts.length; i++) {
+				cumulative += counts[i];
+				snapshot[i] = cumulative;
+			}
+			snapshot[counts.length] = count;
+			snapshot[counts.length + 1] = sum;
+			return snapshot;
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * Add to a counter.
+	 *
+	 * @param name
+	 *            metric name
+	 * @param delta
+	 * @param labels
+	 *            label names and values one after another
+	 */
+	public static final void count(String name, long delta, String... labels) {
+		ConcurrentMap<Labels, AtomicLong> series = counters.get(name);
+		if (series == null) {
+			counters.putIfAbsent(name, new ConcurrentHashMap<Labels, AtomicLong>());
+			series = counters.get(name);
+		}
+		Labels key = new Labels(labels);
+		AtomicLong counter = series.get(key);
+		if (counter == null) {
+			series.putIfAbsent(key, new AtomicLong());
+			counter = series.get(key);
+		}
+		counter.addAndGet(delta);
+	}
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param name
+	 *            metric name
+	 * @param nanos
+	 *            latency in nanoseconds, recorded in seconds
+	 * @param labels
+	 *            label names and values one after another
+	 */
+	public static final void observe(String name, long nanos, String... labels) {
+		ConcurrentMap<Labels, Histogram> series = histograms.get(name);
+		if (series == null) {
+			histograms.putIfAbsent(name, new ConcurrentHashMap<Labels, Histogram>());
+			series = histograms.get(name);
+		}
+		Labels key = new Labels(labels);
+		Histogram histogram = series.get(key);
+		if (histogram == null) {
+			series.putIfAbsent(key, new Histogram());
+			histogram = series.get(key);
+		}
+		histogram.observe(nanos / 1e9);
+	}
+
+	public static final String toJson() {
+		JsonObject root = new JsonObject();
+		JsonObject jCounters = new JsonObject();
+		for (Map.Entry<String, ConcurrentMap<Labels, AtomicLong>> family : new TreeMap<String, ConcurrentMap<Labels, AtomicLong>>(
+				counters).entrySet()) {
+			JsonArray ja = new JsonArray();
+			for (Map.Entry<Labels, AtomicLong> series : family.getValue().entrySet()) {
+				JsonObject jo = new JsonObject();
+				jo.add("labels", series.getKey().toJson());
+				jo.addProperty("value", series.getValue().get());
+				ja.add(jo);
+			}
+			jCounters.add(family.getKey(), ja);
+		}
+		JsonObject jHistograms = new JsonObject();
+		for (Map.Entry<String, ConcurrentMap<Labels, Histogram>> family : new TreeMap<String, ConcurrentMap<Labels, Histogram>>(
+				histograms).entrySet()) {
+			JsonArray ja = new JsonArray();
+			for (Map.Entry<Labels, Histogram> series : family.getValue().entrySet()) {
+				double[] snapshot = series.getValue().snapshot();
+				JsonObject jo = new JsonObject();
+				jo.add("labels", series.getKey().toJson());
+				jo.addProperty("count", (long) snapshot[BUCKETS.length + 1]);
+				jo.addProperty("sum", snapshot[BUCKETS.length + 2]);
+				JsonObject buckets = new JsonObject();
+				for (int i = 0; i < BUCKETS.length; i++) {
+					buckets.addProperty(Double.toString(BUCKETS[i]), (long) snapshot[i]);
+				}
+				buckets.addProperty("+Inf", (long) snapshot[BUCKETS.length]);
+				jo.add("buckets", buckets);
+				ja.add(jo);
+			}
+			jHistograms.add(family.getKey(), ja);
+		}
+		root.add("counters", jCounters);
+		root.add("histograms", jHistograms);
+		return Helper.gson.toJson(root);
+	}
+
+	public static final String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, ConcurrentMap<Labels, AtomicLong>> family : new TreeMap<String, ConcurrentMap<Labels, AtomicLong>>(
+				counters).entrySet()) {
+			sb.append("# TYPE ").append(family.getKey()).append(" counter\n");
+			for (Map.Entry<Labels, AtomicLong> series : family.getValue().entrySet()) {
+				sb.append(family.getKey()).append(series.getKey().format(null)).append(' ')
+						.append(series.getValue().get()).append('\n');
+			}
+		}
+		for (Map.Entry<String, ConcurrentMap<Labels, Histogram>> family : new TreeMap<String, ConcurrentMap<Labels, Histogram>>(
+				histograms).entrySet()) {
+			String name = family.getKey();
+			sb.append("# TYPE ").append(name).append(" histogram\n");
+			for (Map.Entry<Labels, Histogram> series : family.getValue().entrySet()) {
+				double[] snapshot = series.getValue().snapshot();
+				Labels labels = series.getKey();
+				for (int i = 0; i <= BUCKETS.length; i++) {
+					String le = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+					sb.append(name).append("_bucket").append(labels.format("le=\"" + le + "\"")).append(' ')
+							.append((long) snapshot[i]).append('\n');
+				}
+				sb.append(name).append("_sum").append(labels.format(null)).append(' ')
+						.append(snapshot[BUCKETS.length + 2]).append('\n');
+				sb.append(name).append("_count").append(labels.format(null)).append(' ')
+						.append((long) snapshot[BUCKETS.length + 1]).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write all metrics into the given files.
+	 *
+	 * @param jsonPath
+	 *            path of the Json file, null to skip
+	 * @param prometheusPath
+	 *            path of the Prometheus text format file, null to skip
+	 */
+	public static final void export(String jsonPath, String prometheusPath) {
+		if (jsonPath != null) {
+			Helper.save(jsonPath, toJson());
+		}
+		if (prometheusPath != null) {
+			Helper.save(prometheusPath, toPrometheus());
+		}
+	}
+
+	/**
+	 * Start a daemon thread writing all metrics into the given files every
+	 * interval until it is interrupted.
+	 *
+	 * @param interval
+	 *            milliseconds between two exports
+	 * @param jsonPath
+	 *            path of the Json file, null to skip
+	 * @param prometheusPath
+	 *            path of the Prometheus text format file, null to skip
+	 * @return the started thread
+	 */
+	public static final Thread startExporting(final long interval, final String jsonPath,
+			final String prometheusPath) {
+		Thread exporter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(interval);
+						export(jsonPath, prometheusPath);
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		});
+		exporter.setDaemon(true);
+		exporter.start();
+		return exporter;
+	}
+
+}
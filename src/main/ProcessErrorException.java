@@ -2,13 +2,31 @@ package main;
 
 public class ProcessErrorException extends Exception {
 	private static final long serialVersionUID = 1L;
+	private final Failure failure;
 
 	ProcessErrorException() {
 		super();
+		failure = Failure.TRANSIENT;
 	}
 
 	ProcessErrorException(String message) {
 		super(message);
+		failure = Failure.TRANSIENT;
+	}
+
+	/**
+	 * @param exitValue
+	 *            exit value of the failed process
+	 * @param error
+	 *            stderr of the failed process
+	 */
+	ProcessErrorException(int exitValue, String error) {
+		super(error);
+		failure = Failure.classify(exitValue, error);
+	}
+
+	public final Failure getFailure() {
+		return failure;
 	}
 
 }
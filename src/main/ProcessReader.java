@@ -8,27 +8,43 @@ import java.io.UnsupportedEncodingException;
 
 /**
  * Each instance of this class will generate two threads reading the stdout and
- * stderr of the given process. The reading may use the default charset or a
- * specified one.
+ * stderr of the given process, or only one for stderr if stdout is read by
+ * the caller itself. The reading may use the default charset or a
+ * specified one. The threads are created by Execution, so they are virtual
+ * threads in its virtual mode.
+ * 
+ * Everything read is kept by default. With a tail length, only the last
+ * characters of each stream are kept in a TailBuffer, so a long running
+ * process printing progress all the time does not take more and more memory.
  * 
  * @author Zhen Chen
  *
  */
 
 public final class ProcessReader {
-	private ProcessReaderThread outputReader;
-	private ProcessReaderThread errorReader;
+	// keep everything read
+	public static final int FULL = 0;
+	private ProcessReaderTask outputReader;
+	private ProcessReaderTask errorReader;
+	private Thread outputThread;
+	private Thread errorThread;
 
-	private static final class ProcessReaderThread extends Thread {
+	private static final class ProcessReaderTask implements Runnable {
 		private BufferedReader reader;
-		private StringBuilder builder = new StringBuilder();
-
-		ProcessReaderThread(InputStream is) {
-			this.reader = new BufferedReader(new InputStreamReader(is));
-		}
+		private StringBuilder builder;
+		private TailBuffer tail;
 
-		ProcessReaderThread(InputStream is, String charset) throws UnsupportedEncodingException {
-			this.reader = new BufferedReader(new InputStreamReader(is, charset));
+		ProcessReaderTask(InputStream is, String charset, int tailLength) throws UnsupportedEncodingException {
+			if (charset == null) {
+				this.reader = new BufferedReader(new InputStreamReader(is));
+			} else {
+				this.reader = new BufferedReader(new InputStreamReader(is, charset));
+			}
+			if (tailLength == FULL) {
+				builder = new StringBuilder();
+			} else {
+				tail = new TailBuffer(tailLength);
+			}
 		}
 
 		@Override
@@ -36,8 +52,13 @@ public final class ProcessReader {
 			String line;
 			try {
 				while ((line = reader.readLine()) != null) {
-					builder.append(line);
-					builder.append(System.lineSeparator());
+					if (builder != null) {
+						builder.append(line);
+						builder.append(System.lineSeparator());
+					} else {
+						tail.append(line);
+						tail.append(System.lineSeparator());
+					}
 				}
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -45,31 +66,71 @@ public final class ProcessReader {
 		}
 
 		public final String getResult() {
-			return builder.toString();
+			if (builder != null) {
+				return builder.toString();
+			}
+			return tail.toString();
 		}
 
 	}
 
 	public ProcessReader(Process p) {
-		outputReader = new ProcessReaderThread(p.getInputStream());
-		errorReader = new ProcessReaderThread(p.getErrorStream());
-		startReader();
+		try {
+			init(p, null, true, FULL);
+		} catch (UnsupportedEncodingException e) {
+			// the default charset is always supported
+			throw new IllegalStateException(e);
+		}
 	}
 
 	public ProcessReader(Process p, String charset) throws UnsupportedEncodingException {
-		outputReader = new ProcessReaderThread(p.getInputStream(), charset);
-		errorReader = new ProcessReaderThread(p.getErrorStream(), charset);
+		init(p, charset, true, FULL);
+	}
+
+	/**
+	 * @param p
+	 * @param charset
+	 *            charset of the output, null for the default charset
+	 * @param readOutput
+	 *            if false, only stderr is read and stdout is left to the
+	 *            caller
+	 * @param tailLength
+	 *            number of last characters kept for each stream, or FULL to
+	 *            keep everything
+	 * @throws UnsupportedEncodingException
+	 */
+	public ProcessReader(Process p, String charset, boolean readOutput, int tailLength)
+			throws UnsupportedEncodingException {
+		init(p, charset, readOutput, tailLength);
+	}
+
+	private final void init(Process p, String charset, boolean readOutput, int tailLength)
+			throws UnsupportedEncodingException {
+		if (readOutput) {
+			outputReader = new ProcessReaderTask(p.getInputStream(), charset, tailLength);
+		}
+		errorReader = new ProcessReaderTask(p.getErrorStream(), charset, tailLength);
 		startReader();
 	}
 
 	private final void startReader() {
-		outputReader.start();
-		errorReader.start();
+		if (outputReader != null) {
+			outputThread = Execution.newThread(outputReader);
+			outputThread.start();
+		}
+		errorThread = Execution.newThread(errorReader);
+		errorThread.start();
 	}
 
+	/**
+	 * @return everything kept from stdout, or null if stdout is not read
+	 */
 	public final String getOutput() {
+		if (outputReader == null) {
+			return null;
+		}
 		try {
-			outputReader.join();
+			outputThread.join();
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
@@ -78,7 +139,7 @@ public final class ProcessReader {
 
 	public final String getError() {
 		try {
-			errorReader.join();
+			errorThread.join();
 		} catch (InterruptedException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,233 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This transport starts a new You-Get process for each job, using the
+ * executable and charset set on YouGet.
+ *
+ * For REDIRECT output, no thread reads the process at all. Its stderr goes to
+ * a temporary file and its stdout is discarded, or both go to a log file for
+ * each job in the log directory if there is one, named after the last
+ * argument of the job, which is the URL for all YouGet tasks. The file is
+ * only read and decoded when the error of the job is asked for.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class ProcessTransport implements Transport {
+	// characters kept from the end of stderr
+	private static final int DEFAULT_TAIL_LENGTH = 16 * 1024;
+	private final int tailLength;
+	// null to discard stdout of REDIRECT output
+	private final File logDirectory;
+	private static final File NULL_FILE = new File(
+			System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+
+	private static final class ProcessJob implements Job {
+		private final Process process;
+		private final ProcessReader reader;
+		private final Reader outputReader;
+
+		ProcessJob(Process process, ProcessReader reader, Reader outputReader) {
+			this.process = process;
+			this.reader = reader;
+			this.outputReader = outputReader;
+		}
+
+		@Override
+		public int waitFor() throws InterruptedException {
+			return process.waitFor();
+		}
+
+		@Override
+		public String getOutput() {
+			return reader.getOutput();
+		}
+
+		@Override
+		public Reader getOutputReader() {
+			return outputReader;
+		}
+
+		@Override
+		public String getError() {
+			return reader.getError();
+		}
+
+	}
+
+	public ProcessTransport() {
+		this(DEFAULT_TAIL_LENGTH, null);
+	}
+
+	/**
+	 * @param logDirectory
+	 *            directory of log files of REDIRECT output, null to discard
+	 *            stdout of REDIRECT output
+	 */
+	public ProcessTransport(String logDirectory) {
+		this(DEFAULT_TAIL_LENGTH, logDirectory);
+	}
+
+	/**
+	 * @param tailLength
+	 *            number of last characters kept from stderr, or read from the
+	 *            log, at least 1
+	 * @param logDirectory
+	 *            directory of log files of REDIRECT output, null to discard
+	 *            stdout of REDIRECT output
+	 */
+	public ProcessTransport(int tailLength, String logDirectory) {
+		this.tailLength = Math.max(1, tailLength);
+		this.logDirectory = logDirectory == null ? null : new File(logDirectory);
+	}
+
+	private final class RedirectedJob implements Job {
+		private final Process process;
+		private final File log;
+		// whether log is a temporary file to be removed
+		private final boolean temporary;
+
+		RedirectedJob(Process process, File log, boolean temporary) {
+			this.process = process;
+			this.log = log;
+			this.temporary = temporary;
+		}
+
+		@Override
+		public int waitFor() throws InterruptedException {
+			int exitValue = process.waitFor();
+			if (exitValue == 0 && temporary) {
+				// nobody is going to read it
+				log.delete();
+			}
+			return exitValue;
+		}
+
+		@Override
+		public String getOutput() {
+			return null;
+		}
+
+		@Override
+		public Reader getOutputReader() {
+			return null;
+		}
+
+		/**
+		 * Read and decode the tail of the log file.
+		 */
+		@Override
+		public String getError() {
+			try (RandomAccessFile file = new RandomAccessFile(log, "r")) {
+				// a character takes at most 4 bytes in any charset used here
+				long length = Math.min(file.length(), 4L * tailLength);
+				byte[] bytes = new byte[(int) length];
+				file.seek(file.length() - length);
+				file.readFully(bytes);
+				String charset = YouGet.getCharset();
+				String error = charset == null ? new String(bytes) : new String(bytes, charset);
+				if (error.length() > tailLength) {
+					error = "..." + error.substring(error.length() - tailLength);
+				}
+				return error;
+			} catch (IOException e) {
+				return "Failed to read " + log.getPath() + ": " + e.getMessage();
+			} finally {
+				if (temporary) {
+					log.delete();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * @throws FileNotFoundException
+	 *             if YouGet.setExecutable(String path, boolean portable) has
+	 *             not been called
+	 */
+	@Override
+	public Job start(List<String> arguments, Output output) throws IOException {
+		String executable = YouGet.getExecutable();
+		if (executable == null) {
+			throw new FileNotFoundException(
+					"You must call setExecutable(String path, boolean portable) method before run it!");
+		}
+		List<String> command = new ArrayList<String>();
+		command.add(executable);
+		command.addAll(arguments);
+		ProcessBuilder pb = new ProcessBuilder(command);
+		Map<String, String> env = pb.environment();
+		env.put("LC_CTYPE", "en_US.UTF-8");
+		if (output == Output.REDIRECT) {
+			return startRedirected(pb, arguments);
+		}
+		Process p = pb.start();
+		String charset = YouGet.getCharset();
+		// stdout is read by the caller
+		ProcessReader pr = new ProcessReader(p, charset, false, tailLength);
+		Reader outputReader;
+		if (charset == null) {
+			outputReader = new BufferedReader(new InputStreamReader(p.getInputStream()));
+		} else {
+			outputReader = new BufferedReader(new InputStreamReader(p.getInputStream(), charset));
+		}
+		return new ProcessJob(p, pr, outputReader);
+	}
+
+	private Job startRedirected(ProcessBuilder pb, List<String> arguments) throws IOException {
+		File log;
+		boolean temporary;
+		if (logDirectory == null) {
+			log = File.createTempFile("you-get-", ".log");
+			temporary = true;
+			pb.redirectOutput(NULL_FILE);
+			pb.redirectError(log);
+		} else {
+			logDirectory.mkdirs();
+			log = new File(logDirectory, getLogName(arguments.get(arguments.size() - 1)));
+			temporary = false;
+			pb.redirectErrorStream(true);
+			pb.redirectOutput(log);
+		}
+		try {
+			return new RedirectedJob(pb.start(), log, temporary);
+		} catch (IOException e) {
+			if (temporary) {
+				log.delete();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @param argument
+	 * @return a file name made of the given argument which is safe on all
+	 *         platforms
+	 */
+	private static String getLogName(String argument) {
+		String name = argument.replace("\"", "").replaceAll("[^A-Za-z0-9._-]+", "_");
+		if (name.length() > 100) {
+			name = name.substring(0, 100);
+		}
+		return name + "-" + Integer.toHexString(argument.hashCode()) + ".log";
+	}
+
+	@Override
+	public void close() {
+		// nothing is kept between jobs
+	}
+
+}
@@ -0,0 +1,69 @@
+package main;
+
+/**
+ * Progress of downloading a target, as last printed by its You-Get process.
+ *
+ * Each downloading task updates a single instance of this class, so it must
+ * be copied if it needs to be kept.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class ProgressEvent {
+	private final Target target;
+	private double percent;
+	private long bytesDone;
+	// -1 if unknown
+	private long bytesTotal = -1;
+	// -1 if unknown
+	private long bytesPerSecond = -1;
+
+	public ProgressEvent(Target target) {
+		this.target = target;
+	}
+
+	final void set(double percent, long bytesDone, long bytesTotal, long bytesPerSecond) {
+		this.percent = percent;
+		this.bytesDone = bytesDone;
+		this.bytesTotal = bytesTotal;
+		this.bytesPerSecond = bytesPerSecond;
+	}
+
+	public final Target getTarget() {
+		return target;
+	}
+
+	public final double getPercent() {
+		return percent;
+	}
+
+	public final long getBytesDone() {
+		return bytesDone;
+	}
+
+	/**
+	 * @return total bytes to download or -1 if unknown
+	 */
+	public final long getBytesTotal() {
+		return bytesTotal;
+	}
+
+	/**
+	 * @return current speed or -1 if unknown
+	 */
+	public final long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * @return estimated seconds left or -1 if unknown
+	 */
+	public final long getEtaSeconds() {
+		if (bytesTotal < 0 || bytesPerSecond <= 0) {
+			return -1;
+		}
+		return Math.max(0, bytesTotal - bytesDone) / bytesPerSecond;
+	}
+
+}
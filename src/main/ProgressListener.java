@@ -0,0 +1,52 @@
+package main;
+
+/**
+ * A listener of the progress of YouGet tasks, registered through
+ * Controller.addProgressListener(ProgressListener listener).
+ *
+ * Methods are called from the threads running the tasks and the scheduler, so
+ * they have to be thread safe and return quickly.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public interface ProgressListener {
+
+	/**
+	 * Called when a task is started by the scheduler.
+	 *
+	 * @param target
+	 *            the target of the task
+	 */
+	void onStarted(Target target);
+
+	/**
+	 * Called each time the scheduler dispatches a task, including the later
+	 * tasks of a target and retries.
+	 *
+	 * @param task
+	 *            the dispatched task
+	 */
+	void onTaskStarted(YouGet task);
+
+	/**
+	 * Called for each progress update printed by a downloading process.
+	 *
+	 * @param event
+	 *            the progress, reused for later updates of the same task, so it
+	 *            must not be kept after returning
+	 */
+	void onProgress(ProgressEvent event);
+
+	/**
+	 * Called when a task has finished.
+	 *
+	 * @param target
+	 *            the target of the task
+	 * @param success
+	 *            whether the task has succeeded
+	 */
+	void onFinished(Target target, boolean success);
+
+}
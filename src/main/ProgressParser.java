@@ -0,0 +1,270 @@
+package main;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * It parses the progress bar printed by a downloading You-Get process as the
+ * output streams out, and publishes each update to the progress listeners.
+ * A progress bar looks like
+ *
+ * <pre>
+ *  45.3% ( 12.3/ 27.1MB) ├████──┤[1/1]    2 MB/s
+ * </pre>
+ *
+ * and is redrawn after each carriage return. Only the current line is kept,
+ * in a fixed buffer, and numbers are parsed in place, so nothing is allocated
+ * for each update.
+ *
+ * The title and the chosen stream printed by You-Get before the download
+ * starts, in lines like "title: ..." and "- format: ...", are kept as well.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class ProgressParser {
+	private static final int MAX_LINE_LENGTH = 512;
+	private final char[] line = new char[MAX_LINE_LENGTH];
+	private int length = 0;
+	private final ProgressEvent event;
+	private final List<ProgressListener> listeners;
+	private String title = null;
+	private String stream = null;
+
+	/**
+	 * @param target
+	 *            the target being downloaded
+	 * @param listeners
+	 *            listeners to publish updates to
+	 */
+	public ProgressParser(Target target, List<ProgressListener> listeners) {
+		this.event = new ProgressEvent(target);
+		this.listeners = listeners;
+	}
+
+	/**
+	 * Read the given output to the end, parsing it on the way.
+	 *
+	 * @param reader
+	 * @throws IOException
+	 */
+	public final void consume(Reader reader) throws IOException {
+		char[] buffer = new char[4096];
+		int count;
+		while ((count = reader.read(buffer)) != -1) {
+			feed(buffer, 0, count);
+		}
+		finish();
+	}
+
+	public final void feed(char[] buffer, int offset, int count) {
+		for (int i = offset; i < offset + count; i++) {
+			char c = buffer[i];
+			if (c == '\r' || c == '\n') {
+				finish();
+			} else if (length < MAX_LINE_LENGTH) {
+				line[length++] = c;
+			}
+		}
+	}
+
+	/**
+	 * Parse what is left in the current line.
+	 */
+	public final void finish() {
+		if (length > 0) {
+			parseLine();
+			length = 0;
+		}
+	}
+
+	/**
+	 * @return the title printed by You-Get, or null if there is none
+	 */
+	public final String getTitle() {
+		return title;
+	}
+
+	/**
+	 * @return the format or itag of the stream chosen by You-Get, or null if
+	 *         it has not been printed
+	 */
+	public final String getStream() {
+		return stream;
+	}
+
+	private final void parseLine() {
+		int start = 0;
+		while (start < length && line[start] == ' ') {
+			start++;
+		}
+		if (title == null && startsWith(start, "title:")) {
+			title = getValue(start + "title:".length());
+			return;
+		} else if (stream == null && (startsWith(start, "- format:") || startsWith(start, "- itag:"))) {
+			stream = getValue(indexOf(':', start) + 1);
+			return;
+		}
+		int percentAt = indexOf('%', 0);
+		if (percentAt < 0) {
+			return;
+		}
+		double percent = parseNumberBefore(percentAt);
+		if (Double.isNaN(percent)) {
+			return;
+		}
+		long done = -1;
+		long total = -1;
+		int open = indexOf('(', percentAt);
+		int slash = open < 0 ? -1 : indexOf('/', open);
+		int close = slash < 0 ? -1 : indexOf(')', slash);
+		if (close > 0) {
+			// the unit follows the total, e.g. "27.1MB"
+			int unitAt = slash + 1;
+			while (unitAt < close && !Character.isLetter(line[unitAt])) {
+				unitAt++;
+			}
+			long multiplier = getMultiplier(unitAt < close ? line[unitAt] : 'B');
+			double d = parseNumber(open + 1, slash);
+			double t = parseNumber(slash + 1, unitAt);
+			if (!Double.isNaN(d)) {
+				done = (long) (d * multiplier);
+			}
+			if (!Double.isNaN(t)) {
+				total = (long) (t * multiplier);
+			}
+		}
+		if (done < 0 && total >= 0) {
+			done = (long) (total * percent / 100);
+		}
+		long speed = -1;
+		int perSecond = lastIndexOf("/s");
+		if (perSecond > 0) {
+			int unitAt = perSecond;
+			while (unitAt > 0 && Character.isLetter(line[unitAt - 1])) {
+				unitAt--;
+			}
+			if (unitAt < perSecond) {
+				double s = parseNumberBefore(unitAt);
+				if (!Double.isNaN(s)) {
+					speed = (long) (s * getMultiplier(line[unitAt]));
+				}
+			}
+		}
+		event.set(percent, Math.max(0, done), total, speed);
+		for (ProgressListener listener : listeners) {
+			listener.onProgress(event);
+		}
+	}
+
+	private static long getMultiplier(char unit) {
+		switch (unit) {
+		case 'k':
+		case 'K':
+			return 1024L;
+		case 'M':
+			return 1024L * 1024;
+		case 'G':
+			return 1024L * 1024 * 1024;
+		default:
+			return 1;
+		}
+	}
+
+	private final int indexOf(char c, int from) {
+		for (int i = from; i < length; i++) {
+			if (line[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return whether the line starts with the given lower case string at
+	 *         the given index, ignoring case
+	 */
+	private final boolean startsWith(int from, String s) {
+		if (from + s.length() > length) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.toLowerCase(line[from + i]) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the rest of the line from the given index, trimmed, or null if
+	 *         it is empty
+	 */
+	private final String getValue(int from) {
+		String value = new String(line, from, length - from).trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	private final int lastIndexOf(String s) {
+		for (int i = length - s.length(); i >= 0; i--) {
+			boolean match = true;
+			for (int j = 0; j < s.length() && match; j++) {
+				match = line[i + j] == s.charAt(j);
+			}
+			if (match) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parse the number ending right before the given index, spaces between
+	 * them are allowed.
+	 */
+	private final double parseNumberBefore(int end) {
+		while (end > 0 && line[end - 1] == ' ') {
+			end--;
+		}
+		int start = end;
+		while (start > 0 && (Character.isDigit(line[start - 1]) || line[start - 1] == '.')) {
+			start--;
+		}
+		return parseNumber(start, end);
+	}
+
+	/**
+	 * Parse a decimal number between the given indexes, surrounding spaces
+	 * are allowed.
+	 *
+	 * @return the number or NaN if there is none
+	 */
+	private final double parseNumber(int start, int end) {
+		double value = 0;
+		double scale = 0;
+		boolean digits = false;
+		for (int i = start; i < end; i++) {
+			char c = line[i];
+			if (c >= '0' && c <= '9') {
+				digits = true;
+				if (scale == 0) {
+					value = value * 10 + (c - '0');
+				} else {
+					value += (c - '0') * scale;
+					scale /= 10;
+				}
+			} else if (c == '.' && scale == 0) {
+				scale = 0.1;
+			} else if (c != ' ' || digits) {
+				if (c == ' ') {
+					break;
+				}
+				return Double.NaN;
+			}
+		}
+		return digits ? value : Double.NaN;
+	}
+
+}
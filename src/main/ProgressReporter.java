@@ -0,0 +1,106 @@
+package main;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * It shows the user an aggregate view of a run of tasks: how many of them
+ * have been started and finished, and the total speed of all running
+ * downloads, printed as a single line every REPORT_INTERVAL milliseconds while
+ * there is any download running or any task has been started since the last
+ * line.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class ProgressReporter implements ProgressListener {
+	private static final long REPORT_INTERVAL = 5000;
+	private final int total;
+	private final AtomicInteger started = new AtomicInteger();
+	private final AtomicInteger finished = new AtomicInteger();
+	// latest speed of each running download
+	private final Map<Target, Long> speeds = new ConcurrentHashMap<Target, Long>();
+	private final Thread printer;
+	// started count in the last line
+	private int reported = 0;
+
+	/**
+	 * @param total
+	 *            number of tasks in the run
+	 */
+	public ProgressReporter(int total) {
+		this.total = total;
+		printer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(REPORT_INTERVAL);
+						report();
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		});
+		printer.setDaemon(true);
+		printer.start();
+	}
+
+	@Override
+	public void onStarted(Target target) {
+		started.incrementAndGet();
+	}
+
+	@Override
+	public void onTaskStarted(YouGet task) {
+	}
+
+	@Override
+	public void onProgress(ProgressEvent event) {
+		speeds.put(event.getTarget(), Math.max(0, event.getBytesPerSecond()));
+	}
+
+	@Override
+	public void onFinished(Target target, boolean success) {
+		speeds.remove(target);
+		finished.incrementAndGet();
+	}
+
+	private synchronized final void report() {
+		int s = started.get();
+		if (speeds.isEmpty() && s == reported) {
+			return;
+		}
+		reported = s;
+		long speed = 0;
+		for (long v : speeds.values()) {
+			speed += v;
+		}
+		synchronized (Controller.printLock) {
+			System.out.printf("%d of %d started, %d finished, %d downloading at %s in total.%n", s, total,
+					finished.get(), speeds.size(), formatSpeed(speed));
+		}
+	}
+
+	static final String formatSpeed(long bytesPerSecond) {
+		if (bytesPerSecond >= 1024L * 1024) {
+			return String.format("%.1f MB/s", bytesPerSecond / (1024.0 * 1024));
+		} else if (bytesPerSecond >= 1024) {
+			return String.format("%.1f kB/s", bytesPerSecond / 1024.0);
+		}
+		return bytesPerSecond + " B/s";
+	}
+
+	/**
+	 * Stop printing, with a last line if any task has been started since the
+	 * last one.
+	 */
+	public final void stop() {
+		printer.interrupt();
+		report();
+	}
+
+}
@@ -0,0 +1,55 @@
+package main;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * It decides whether and when a failed YouGet task is run again.
+ *
+ * A permanent failure is never retried. Transient and throttled failures are
+ * retried up to MAX_ATTEMPTS times in total, after a delay growing
+ * exponentially with the number of attempts so far. Throttled failures start
+ * from a longer delay. A random jitter of up to half the delay spreads out
+ * retries failed at the same time.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class RetryPolicy {
+	public static final int MAX_ATTEMPTS = 3;
+	// milliseconds
+	private static final long TRANSIENT_DELAY = 1000;
+	private static final long THROTTLED_DELAY = 10000;
+	private static final long MAX_DELAY = 300000;
+	private final int maxAttempts;
+
+	public RetryPolicy() {
+		this(MAX_ATTEMPTS);
+	}
+
+	/**
+	 * @param maxAttempts
+	 *            maximum number of times a task is run, at least 1
+	 */
+	public RetryPolicy(int maxAttempts) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+	}
+
+	/**
+	 * @param failure
+	 *            how the last attempt failed
+	 * @param attempts
+	 *            number of attempts so far, at least 1
+	 * @return milliseconds to wait before running the task again, or -1 if it
+	 *         should not be run again
+	 */
+	public final long getDelay(Failure failure, int attempts) {
+		if (failure == null || failure == Failure.PERMANENT || attempts >= maxAttempts) {
+			return -1;
+		}
+		long base = failure == Failure.THROTTLED ? THROTTLED_DELAY : TRANSIENT_DELAY;
+		long delay = Math.min(MAX_DELAY, base << Math.min(attempts - 1, 20));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+}
@@ -0,0 +1,434 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each instance of this class runs a list of YouGet tasks through a bounded
+ * number of slots. As soon as any running task finishes, the next pending task
+ * is started in the freed slot, so one slow task never holds up the others.
+ *
+ * In adaptive mode, the number of slots is tuned by a ConcurrencyTuner after
+ * each finished task within the given maximum.
+ *
+ * On top of the global limit, a HostLimiter caps the number of running tasks
+ * of each configured host. A pending task whose host is full is skipped, so
+ * tasks of other hosts further down the list can take the free slot.
+ *
+ * A failed task is classified by its Failure. Transient and throttled tasks
+ * are put back with an exponential backoff by a RetryPolicy, and a
+ * HostCircuitBreaker pauses a host whose tasks keep being throttled.
+ *
+ * Tasks of a kind given a pool of their own, e.g. INFO tasks, are counted
+ * against the size of that pool instead of the limit, so they never take the
+ * slots of the others. A FollowUp may queue the next task of a target as soon
+ * as its previous task has succeeded, e.g. its DOWNLOAD right after its INFO,
+ * so later stages start without waiting for the whole list.
+ *
+ * DOWNLOAD tasks ready to start are picked in the given Order, either in the
+ * order of the list or by their expected sizes. Running the largest first
+ * keeps the last slots from finishing long after the others, while running
+ * the smallest first finishes most tasks early. Tasks of unknown sizes go
+ * after those of known sizes, so the sizes have to be known from the info of
+ * the targets. Unless the order is FIFO, DOWNLOAD tasks wait in a priority
+ * queue apart from the other pending tasks.
+ *
+ * Tasks are run by an executor from Execution, on platform threads or on
+ * virtual threads depending on its mode.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class Scheduler {
+	private int limit;
+	private final ConcurrencyTuner tuner;
+	private final HostLimiter hostLimiter;
+	private final HostCircuitBreaker breaker = new HostCircuitBreaker();
+	private final RetryPolicy retryPolicy = new RetryPolicy();
+	// sizes of the pools of tasks not counted against limit, by their kinds
+	private final Map<YouGet.Task, Integer> poolLimits = new EnumMap<YouGet.Task, Integer>(YouGet.Task.class);
+	// number of running tasks in each of these pools
+	private final Map<YouGet.Task, Integer> poolRunning = new EnumMap<YouGet.Task, Integer>(YouGet.Task.class);
+	// number of running tasks counted against limit
+	private int running = 0;
+	private FollowUp followUp = null;
+	private Order order = Order.FIFO;
+	// DOWNLOAD tasks waiting to start unless the order is FIFO
+	private final PriorityQueue<Ready> ready = new PriorityQueue<Ready>(11, new Comparator<Ready>() {
+		@Override
+		public int compare(Ready a, Ready b) {
+			// unknown sizes go last
+			if ((a.size < 0) != (b.size < 0)) {
+				return a.size < 0 ? 1 : -1;
+			}
+			int c = order == Order.LONGEST_FIRST ? Long.compare(b.size, a.size) : Long.compare(a.size, b.size);
+			return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+		}
+	});
+	// number of tasks put into ready so far
+	private long queued = 0;
+	private final ExecutorService executor = Execution.newTaskExecutor();
+	// running tasks put themselves here once they have finished
+	private final BlockingQueue<YouGet> finished = new LinkedBlockingQueue<YouGet>();
+
+	/**
+	 * @param limit
+	 *            maximum number of tasks allowed to be running at the same
+	 *            time, at least 1
+	 * @param adaptive
+	 *            if true, limit is only the maximum and the actual number is
+	 *            tuned during the run
+	 * @param hostLimits
+	 *            maximum number of running tasks for each host, may be null
+	 */
+	public Scheduler(int limit, boolean adaptive, Map<String, Integer> hostLimits) {
+		hostLimiter = new HostLimiter(hostLimits);
+		if (adaptive) {
+			tuner = new ConcurrencyTuner(limit);
+			this.limit = tuner.getLimit();
+		} else {
+			tuner = null;
+			this.limit = Math.max(1, limit);
+		}
+	}
+
+	/**
+	 * A failed task waiting to be run again.
+	 */
+	private static final class Retry implements Comparable<Retry> {
+		final YouGet task;
+		// time in milliseconds from which it can be run again
+		final long readyAt;
+
+		Retry(YouGet task, long readyAt) {
+			this.task = task;
+			this.readyAt = readyAt;
+		}
+
+		@Override
+		public int compareTo(Retry o) {
+			return Long.compare(readyAt, o.readyAt);
+		}
+	}
+
+	/**
+	 * A DOWNLOAD task waiting in the priority queue.
+	 */
+	private static final class Ready {
+		final YouGet task;
+		// expected size in bytes, negative if unknown
+		final long size;
+		// tasks of the same size go in the order they have been queued
+		final long sequence;
+
+		Ready(YouGet task, long size, long sequence) {
+			this.task = task;
+			this.size = size;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * It gives the next task of a target once a task of it has succeeded.
+	 */
+	public static interface FollowUp {
+		/**
+		 * @param yg
+		 *            a task which has succeeded
+		 * @return the next task of the same target, or null if there is none
+		 */
+		YouGet next(YouGet yg);
+	}
+
+	/**
+	 * The order in which DOWNLOAD tasks ready to start are picked.
+	 */
+	public static enum Order {
+		FIFO, LONGEST_FIRST, SHORTEST_FIRST;
+	}
+
+	public final int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Run tasks of the given kind in a pool of the given size of their own.
+	 * It must be called before runAll().
+	 *
+	 * @param task
+	 * @param size
+	 *            maximum number of tasks of the kind running at the same time,
+	 *            at least 1
+	 */
+	public final void setPoolLimit(YouGet.Task task, int size) {
+		poolLimits.put(task, Math.max(1, size));
+		poolRunning.put(task, 0);
+	}
+
+	/**
+	 * It must be called before runAll().
+	 *
+	 * @param followUp
+	 *            gives the next task of each succeeded one, may be null
+	 */
+	public final void setFollowUp(FollowUp followUp) {
+		this.followUp = followUp;
+	}
+
+	/**
+	 * It must be called before runAll().
+	 *
+	 * @param order
+	 *            order of DOWNLOAD tasks, FIFO if null
+	 */
+	public final void setOrder(Order order) {
+		this.order = order != null ? order : Order.FIFO;
+	}
+
+	/**
+	 * It starts tasks in the given order and keeps at most limit number of
+	 * them running until all of them have finished. Tasks of a host which has
+	 * reached its own limit or has been paused wait while tasks behind them
+	 * may go first.
+	 *
+	 * A failed task is given up or put back to be run again after a delay
+	 * according to the RetryPolicy, without holding its slot while waiting.
+	 * The failure of each task is collected once it has been given up.
+	 *
+	 * The start and finish of each target are published to the progress
+	 * listeners registered on Controller. The finish is published only once
+	 * its last task has succeeded or any of its tasks has been given up.
+	 *
+	 * This method can only be called once for each instance.
+	 *
+	 * @param tasks
+	 *            a list of prepared tasks to be run
+	 * @return targets of all failed tasks
+	 */
+	public final Set<Target> runAll(List<YouGet> tasks) {
+		long queuedAt = System.nanoTime();
+		Set<Target> failed = new HashSet<Target>();
+		LinkedList<YouGet> pending = new LinkedList<YouGet>();
+		for (YouGet yg : tasks) {
+			queue(pending, yg, false);
+		}
+		PriorityQueue<Retry> retries = new PriorityQueue<Retry>();
+		// tasks queued by followUp, whose targets have been started before
+		Set<YouGet> followUps = Collections.newSetFromMap(new IdentityHashMap<YouGet, Boolean>());
+		try {
+			while (!pending.isEmpty() || !ready.isEmpty() || !retries.isEmpty() || getRunning() > 0) {
+				long now = System.currentTimeMillis();
+				// retries go before tasks never started
+				while (!retries.isEmpty() && retries.peek().readyAt <= now) {
+					queue(pending, retries.poll().task, true);
+				}
+				YouGet next;
+				while ((next = pollStartable(pending, now)) != null) {
+					if (next.getAttempts() == 0 && !followUps.contains(next)) {
+						Metrics.observe("youget_queue_wait_seconds", System.nanoTime() - queuedAt, "task",
+								next.getTaskLabel());
+						for (ProgressListener listener : Controller.getProgressListeners()) {
+							listener.onStarted(next.getTarget());
+						}
+					}
+					for (ProgressListener listener : Controller.getProgressListeners()) {
+						listener.onTaskStarted(next);
+					}
+					start(next);
+					addRunning(next.getTask(), 1);
+				}
+				YouGet yg;
+				if (getRunning() > 0 && pending.isEmpty() && ready.isEmpty() && retries.isEmpty()) {
+					yg = finished.take();
+				} else {
+					// wake up for the next retry or resumed host if nothing
+					// finishes before that
+					long wakeUp = breaker.getNextResume(now);
+					if (!retries.isEmpty()) {
+						wakeUp = Math.min(wakeUp, retries.peek().readyAt);
+					}
+					yg = finished.poll(Math.max(1, wakeUp - now), TimeUnit.MILLISECONDS);
+					if (yg == null) {
+						continue;
+					}
+				}
+				addRunning(yg.getTask(), -1);
+				hostLimiter.release(yg.getTarget());
+				now = System.currentTimeMillis();
+				if (breaker.record(yg.getTarget(), yg.getFailure(), now)) {
+					Metrics.count("scheduler_host_pauses_total", 1);
+				}
+				if (tuner != null && !poolLimits.containsKey(yg.getTask())) {
+					limit = tuner.record(yg);
+				}
+				if (!yg.isSuccess()) {
+					long delay = retryPolicy.getDelay(yg.getFailure(), yg.getAttempts());
+					if (delay >= 0) {
+						Metrics.count("scheduler_retries_total", 1, "task", yg.getTaskLabel(), "failure",
+								yg.getFailure().name().toLowerCase());
+						retries.add(new Retry(yg, now + delay));
+						continue;
+					}
+					yg.printFailure();
+					failed.add(yg.getTarget());
+				}
+				Metrics.count("youget_tasks_total", 1, "task", yg.getTaskLabel(), "result",
+						yg.isSuccess() ? "success" : yg.getFailure().name().toLowerCase());
+				YouGet after = yg.isSuccess() && followUp != null ? followUp.next(yg) : null;
+				if (after != null) {
+					followUps.add(after);
+					queue(pending, after, false);
+					continue;
+				}
+				for (ProgressListener listener : Controller.getProgressListeners()) {
+					listener.onFinished(yg.getTarget(), yg.isSuccess());
+				}
+			}
+		} catch (InterruptedException e) {
+			synchronized (Controller.printLock) {
+				e.printStackTrace();
+			}
+			// tasks that have never been started or are waiting for a retry
+			// are considered failed
+			for (YouGet yg : pending) {
+				failed.add(yg.getTarget());
+			}
+			for (Ready r : ready) {
+				failed.add(r.task.getTarget());
+			}
+			for (Retry retry : retries) {
+				failed.add(retry.task.getTarget());
+			}
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+			Metrics.observe("scheduler_run_seconds", System.nanoTime() - queuedAt);
+			Metrics.count("scheduler_tasks_total", tasks.size());
+		}
+		return failed;
+	}
+
+	/**
+	 * @return the number of all running tasks
+	 */
+	private final int getRunning() {
+		int n = running;
+		for (int r : poolRunning.values()) {
+			n += r;
+		}
+		return n;
+	}
+
+	private final void addRunning(YouGet.Task task, int delta) {
+		if (poolRunning.containsKey(task)) {
+			poolRunning.put(task, poolRunning.get(task) + delta);
+		} else {
+			running += delta;
+		}
+	}
+
+	private final boolean hasFreeSlot(YouGet.Task task) {
+		if (poolRunning.containsKey(task)) {
+			return poolRunning.get(task) < poolLimits.get(task);
+		}
+		return running < limit;
+	}
+
+	/**
+	 * Put a task to wait for its start, DOWNLOAD tasks into the priority queue
+	 * unless the order is FIFO.
+	 *
+	 * @param pending
+	 * @param yg
+	 * @param first
+	 *            whether it goes before the other pending tasks, ignored in
+	 *            the priority queue
+	 */
+	private final void queue(LinkedList<YouGet> pending, YouGet yg, boolean first) {
+		if (order != Order.FIFO && yg.getTask() == YouGet.Task.DOWNLOAD) {
+			ready.add(new Ready(yg, yg.getExpectedSize(), queued++));
+		} else if (first) {
+			pending.addFirst(yg);
+		} else {
+			pending.add(yg);
+		}
+	}
+
+	private final boolean isStartable(YouGet yg, long now) {
+		return !breaker.isOpen(yg.getTarget(), now) && hostLimiter.hasFreeSlot(yg.getTarget());
+	}
+
+	/**
+	 * Remove and return the first pending task whose pool has a free slot and
+	 * whose host is not paused and has a free slot, or else the first such
+	 * task in the priority queue.
+	 *
+	 * @param pending
+	 * @param now
+	 *            current time in milliseconds
+	 * @return the first startable task or null if there is none
+	 */
+	private final YouGet pollStartable(LinkedList<YouGet> pending, long now) {
+		boolean full = true;
+		for (YouGet.Task task : YouGet.Task.values()) {
+			full &= !hasFreeSlot(task);
+		}
+		if (full) {
+			return null;
+		}
+		YouGet next = null;
+		for (Iterator<YouGet> it = pending.iterator(); it.hasNext();) {
+			YouGet yg = it.next();
+			if (hasFreeSlot(yg.getTask()) && isStartable(yg, now)) {
+				it.remove();
+				next = yg;
+				break;
+			}
+		}
+		if (next == null && !ready.isEmpty() && hasFreeSlot(YouGet.Task.DOWNLOAD)) {
+			// tasks of hosts not startable now are put back afterwards
+			List<Ready> skipped = new ArrayList<Ready>();
+			Ready r;
+			while ((r = ready.poll()) != null && !isStartable(r.task, now)) {
+				skipped.add(r);
+			}
+			ready.addAll(skipped);
+			if (r != null) {
+				next = r.task;
+			}
+		}
+		if (next != null) {
+			hostLimiter.tryAcquire(next.getTarget());
+		}
+		return next;
+	}
+
+	private final void start(final YouGet yg) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					yg.run();
+				} finally {
+					finished.add(yg);
+				}
+			}
+		});
+	}
+
+}
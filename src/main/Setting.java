@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import main.Controller.Choice;
@@ -21,6 +22,26 @@ public class Setting {
 	String preferredFormat;
 	boolean separateFolder;
 	boolean forceWrite;
+	// maximum number of YouGet processes running at the same time
+	int threads = Controller.DEFAULT_NUMBER_OF_THREADS;
+	// maximum number of YouGet processes fetching info at the same time,
+	// apart from those downloading
+	int infoThreads = Controller.DEFAULT_NUMBER_OF_INFO_THREADS;
+	// number of targets whose info is fetched by one YouGet process, 1 to
+	// disable batching
+	int infoBatchSize = Controller.DEFAULT_INFO_BATCH_SIZE;
+	// order of downloads by the sizes given in their info
+	Scheduler.Order downloadOrder = Scheduler.Order.FIFO;
+	// whether to tune the number of running processes within threads
+	boolean adaptiveThreads;
+	// maximum number of YouGet processes running at the same time per host
+	Map<String, Integer> hostLimits = new HashMap<String, Integer>();
+	// path of the journal for resuming a crashed download, empty to disable
+	// the journal, only set in the setting file and read at start up
+	String journalPath = Controller.DEFAULT_JOURNAL_PATH;
+	// path of the history of downloaded URLs, empty to disable the history,
+	// only set in the setting file and read at start up
+	String historyPath = Controller.DEFAULT_DOWNLOAD_HISTORY_PATH;
 
 	public Setting() throws IOException {
 		String message;
@@ -68,6 +89,65 @@ public class Setting {
 		} else {
 			forceWrite = false;
 		}
+
+		// order of downloads
+		message = "";
+		message += "In which order do you want the targets to be downloaded?%n";
+		message += "1. In the order of the target list%n";
+		message += "2. Largest first, to finish all of them earliest (fetches info of each target)%n";
+		message += "3. Smallest first, to finish most of them early (fetches info of each target)%n";
+		Map<String, Scheduler.Order> orders = new HashMap<String, Scheduler.Order>();
+		orders.put("1", Scheduler.Order.FIFO);
+		orders.put("2", Scheduler.Order.LONGEST_FIRST);
+		orders.put("3", Scheduler.Order.SHORTEST_FIRST);
+		downloadOrder = Helper.getUserChoice(message, orders);
+
+		// concurrency of fetching info
+		if (needsInfo()) {
+			message = "Please enter the maximum number of simultaneous info fetches, hit enter to use %d by default:%n";
+			infoThreads = Helper.getUserPositiveInteger(
+					String.format(message, Controller.DEFAULT_NUMBER_OF_INFO_THREADS),
+					Controller.DEFAULT_NUMBER_OF_INFO_THREADS);
+		}
+
+		// concurrency
+		message = "Please enter the maximum number of simultaneous downloads, hit enter to use %d by default:%n";
+		threads = Helper.getUserPositiveInteger(String.format(message, Controller.DEFAULT_NUMBER_OF_THREADS),
+				Controller.DEFAULT_NUMBER_OF_THREADS);
+		if (threads > 1) {
+			message = "";
+			message += "Do you want to adjust the number of simultaneous downloads automatically within this maximum? (y/n)%n";
+			options = new HashMap<String, Choice>();
+			options.put("y", Choice.YES);
+			options.put("n", Choice.NO);
+			choice = Helper.getUserChoice(message, options);
+			adaptiveThreads = choice == Choice.YES;
+
+			// per-host concurrency
+			System.out.println(
+					"Please enter limits of simultaneous downloads for hosts as \"host limit\", one line for each, hit enter to finish:");
+			String line;
+			while (!(line = Helper.input.readLine().trim()).equals("")) {
+				String[] parts = line.split("\\s+");
+				try {
+					int limit = Integer.parseInt(parts[parts.length - 1]);
+					if (parts.length == 2 && limit > 0) {
+						hostLimits.put(parts[0].toLowerCase(), limit);
+						continue;
+					}
+				} catch (NumberFormatException e) {
+					// fall through
+				}
+				System.err.println("Invalid host limit.");
+			}
+		}
+
+		// batched info fetching, only done by showing titles
+		message = "";
+		message += "Please enter the number of targets whose titles are fetched by one process when showing titles, ";
+		message += "hit enter to use %d by default (1 to fetch them one by one):%n";
+		infoBatchSize = Helper.getUserPositiveInteger(String.format(message, Controller.DEFAULT_INFO_BATCH_SIZE),
+				Controller.DEFAULT_INFO_BATCH_SIZE);
 	}
 
 	public Setting(String json) {
@@ -79,6 +159,47 @@ public class Setting {
 		}
 		preferredFormat = jo.get("preferredFormat").getAsString();
 		forceWrite = jo.get("forceWrite").getAsBoolean();
+		// settings saved by older versions may not have these
+		if (jo.has("threads")) {
+			threads = Math.max(1, jo.get("threads").getAsInt());
+		}
+		if (jo.has("infoThreads")) {
+			infoThreads = Math.max(1, jo.get("infoThreads").getAsInt());
+		}
+		if (jo.has("infoBatchSize")) {
+			infoBatchSize = Math.max(1, jo.get("infoBatchSize").getAsInt());
+		}
+		if (jo.has("downloadOrder")) {
+			try {
+				downloadOrder = Scheduler.Order.valueOf(jo.get("downloadOrder").getAsString());
+			} catch (IllegalArgumentException e) {
+				// unknown order, the default is kept
+			}
+		}
+		if (jo.has("adaptiveThreads")) {
+			adaptiveThreads = jo.get("adaptiveThreads").getAsBoolean();
+		}
+		if (jo.has("hostLimits")) {
+			for (Map.Entry<String, JsonElement> entry : jo.getAsJsonObject("hostLimits").entrySet()) {
+				hostLimits.put(entry.getKey().toLowerCase(), Math.max(1, entry.getValue().getAsInt()));
+			}
+		}
+		if (jo.has("journalPath")) {
+			journalPath = jo.get("journalPath").getAsString();
+		}
+		if (jo.has("historyPath")) {
+			historyPath = jo.get("historyPath").getAsString();
+		}
+	}
+
+	/**
+	 * @return whether info of targets is fetched before downloading them, for
+	 *         folder names unless downloaded in a single pass, the preferred
+	 *         quality or the order by sizes
+	 */
+	final boolean needsInfo() {
+		return (separateFolder && !Controller.SINGLE_PASS) || !preferredFormat.equals("")
+				|| downloadOrder != Scheduler.Order.FIFO;
 	}
 
 	@Override
@@ -92,7 +213,23 @@ public class Setting {
 		}
 		format += "Preferred quality: %3$s%n";
 		format += "Force overwriting any existing file: %4$b%n";
-		return String.format(format, root, folder, preferredFormat, forceWrite);
+		if (adaptiveThreads) {
+			format += "Simultaneous downloads: adaptive, at most %5$d%n";
+		} else {
+			format += "Simultaneous downloads: %5$d%n";
+		}
+		if (!hostLimits.isEmpty()) {
+			format += "Simultaneous downloads per host: %6$s%n";
+		}
+		if (needsInfo()) {
+			format += "Simultaneous info fetches: %7$d%n";
+		}
+		format += "Order of downloads: %8$s%n";
+		if (infoBatchSize > 1) {
+			format += "Targets per title fetch when showing titles: %9$d%n";
+		}
+		return String.format(format, root, folder, preferredFormat, forceWrite, threads, hostLimits, infoThreads,
+				downloadOrder, infoBatchSize);
 	}
 
 }
@@ -0,0 +1,50 @@
+package main;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * It makes concurrent calls with the same key share one execution. The first
+ * caller of a key runs the call, and callers arriving while it is running
+ * wait for it and get the same result or exception. A call arriving after it
+ * has finished runs again.
+ *
+ * @author Zhen Chen
+ *
+ * @param <K>
+ *            type of keys
+ * @param <V>
+ *            type of results
+ */
+
+public final class SingleFlight<K, V> {
+	private final ConcurrentMap<K, FutureTask<V>> calls = new ConcurrentHashMap<K, FutureTask<V>>();
+
+	/**
+	 * @param key
+	 * @param call
+	 * @return the result of the call, or of the running call of the same key
+	 * @throws ExecutionException
+	 *             wrapping the exception thrown by the call
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for a running call
+	 */
+	public final V execute(K key, Callable<V> call) throws ExecutionException, InterruptedException {
+		FutureTask<V> task = new FutureTask<V>(call);
+		FutureTask<V> running = calls.putIfAbsent(key, task);
+		if (running != null) {
+			Metrics.count("singleflight_shared_total", 1);
+			return running.get();
+		}
+		try {
+			task.run();
+			return task.get();
+		} finally {
+			calls.remove(key, task);
+		}
+	}
+
+}
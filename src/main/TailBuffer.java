@@ -0,0 +1,72 @@
+package main;
+
+/**
+ * A fixed-size ring buffer of characters keeping only the last capacity
+ * number of characters appended to it, so its memory stays the same however
+ * much has been appended.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class TailBuffer {
+	private final char[] buffer;
+	// index of the oldest character kept
+	private int start = 0;
+	private int length = 0;
+	private boolean truncated = false;
+
+	/**
+	 * @param capacity
+	 *            number of characters kept, at least 1
+	 */
+	public TailBuffer(int capacity) {
+		buffer = new char[Math.max(1, capacity)];
+	}
+
+	public final void append(String s) {
+		int capacity = buffer.length;
+		int count = s.length();
+		if (count >= capacity) {
+			s.getChars(count - capacity, count, buffer, 0);
+			truncated |= count > capacity || length > 0;
+			start = 0;
+			length = capacity;
+			return;
+		}
+		int end = (start + length) % capacity;
+		int first = Math.min(count, capacity - end);
+		s.getChars(0, first, buffer, end);
+		s.getChars(first, count, buffer, 0);
+		length += count;
+		if (length > capacity) {
+			start = (start + length - capacity) % capacity;
+			length = capacity;
+			truncated = true;
+		}
+	}
+
+	/**
+	 * @return true if any character has been dropped
+	 */
+	public final boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * @return the characters kept, starting with "..." if any character has
+	 *         been dropped
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(length + 3);
+		if (truncated) {
+			sb.append("...");
+		}
+		int first = Math.min(length, buffer.length - start);
+		sb.append(buffer, start, first);
+		sb.append(buffer, 0, length - first);
+		return sb.toString();
+	}
+
+}
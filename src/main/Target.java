@@ -1,21 +1,46 @@
 package main;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.HashSet;
 import java.net.URL;
 import java.net.MalformedURLException;
 
+import com.google.gson.annotations.JsonAdapter;
+
 /**
  * Each instance of this class represents a target to download.
  * 
+ * Its URL is canonicalized, so two targets are equal if their URLs lead to
+ * the same video in the same way according to UrlCanonicalizer.
+ * 
+ * To keep million-entry target lists small, a target only holds its URL as a
+ * string with its hash computed once. Its host is sliced out of the string,
+ * and a URL object is only parsed, and never kept, when asked for. Its
+ * formats are a bitset of indexes in the FormatDictionary, and their sizes,
+ * once known, an array in the same order.
+ * It is read from and written to Json by TargetTypeAdapter in the same shape
+ * as its fields used to be, with the known sizes added.
+ * 
  * @author Zhen Chen
  *
  */
 
+@JsonAdapter(TargetTypeAdapter.class)
 public class Target {
-	private URL url;
+	private String url;
+	private int hash;
 	private String title;
-	private Set<String> formats = new HashSet<String>();
+	// bit i is set if the format of index i in FormatDictionary is allowed,
+	// null if there are no formats
+	private long[] formats;
+	// sizes in bytes of the formats in the order of their indexes, -1 if
+	// unknown, null if no size is known
+	private long[] sizes;
 
 	public Target(String url) throws MalformedURLException {
 		setUrl(url);
@@ -30,16 +55,64 @@ public class Target {
 		setTitle(title);
 	}
 
+	/**
+	 * @return the URL parsed from its canonical form each time
+	 */
 	public final URL getUrl() {
+		try {
+			return new URL(url);
+		} catch (MalformedURLException e) {
+			// it has been parsed once when set
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the lower case host, the same as getUrl().getHost() without
+	 *         parsing the URL
+	 */
+	public final String getHost() {
+		int start = url.indexOf("://");
+		if (start < 0) {
+			return "";
+		}
+		start += 3;
+		int end = start;
+		while (end < url.length() && url.charAt(end) != '/' && url.charAt(end) != '?') {
+			end++;
+		}
+		int at = url.lastIndexOf('@', end - 1);
+		if (at >= start) {
+			start = at + 1;
+		}
+		// the port follows the host, or the brackets of an IPv6 address
+		int colon = url.indexOf(':', url.charAt(start) == '[' ? url.indexOf(']', start) : start);
+		if (colon >= 0 && colon < end) {
+			end = colon;
+		}
+		return url.substring(start, end);
+	}
+
+	/**
+	 * @return the canonical URL, the same as getUrl().toString() without
+	 *         parsing the URL
+	 */
+	public final String getUrlString() {
 		return url;
 	}
 
 	public final void setUrl(String url) throws MalformedURLException {
-		this.url = new URL(url);
+		setUrl(new URL(url));
 	}
 
+	/**
+	 * The URL is kept in its canonical form given by UrlCanonicalizer.
+	 * 
+	 * @param url
+	 */
 	public final void setUrl(URL url) {
-		this.url = url;
+		this.url = UrlCanonicalizer.canonicalize(url);
+		this.hash = this.url.hashCode();
 	}
 
 	public final String getTitle() {
@@ -50,26 +123,197 @@ public class Target {
 		this.title = title;
 	}
 
+	/**
+	 * @return a read-only view of the formats of this target
+	 */
 	public final Set<String> getFormats() {
-		return formats;
+		return new AbstractSet<String>() {
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof String)) {
+					return false;
+				}
+				int index = FormatDictionary.find((String) o);
+				return index >= 0 && hasFormat(index);
+			}
+
+			@Override
+			public int size() {
+				int size = 0;
+				if (formats != null) {
+					for (long word : formats) {
+						size += Long.bitCount(word);
+					}
+				}
+				return size;
+			}
+
+			@Override
+			public Iterator<String> iterator() {
+				return new Iterator<String>() {
+					private int next = nextFormat(0);
+
+					@Override
+					public boolean hasNext() {
+						return next >= 0;
+					}
+
+					@Override
+					public String next() {
+						if (next < 0) {
+							throw new NoSuchElementException();
+						}
+						String name = FormatDictionary.get(next);
+						next = nextFormat(next + 1);
+						return name;
+					}
+				};
+			}
+		};
+	}
+
+	private final boolean hasFormat(int index) {
+		int word = index >>> 6;
+		return formats != null && word < formats.length && (formats[word] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @return the first index of a format of this target from the given one,
+	 *         or -1 if there is none
+	 */
+	private final int nextFormat(int from) {
+		if (formats == null) {
+			return -1;
+		}
+		for (int word = from >>> 6; word < formats.length; word++) {
+			long bits = formats[word];
+			if (word == from >>> 6) {
+				bits &= -1L << from;
+			}
+			if (bits != 0) {
+				return (word << 6) + Long.numberOfTrailingZeros(bits);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of formats of this target before the format of the
+	 *         given index
+	 */
+	private final int rank(int index) {
+		int rank = 0;
+		int word = index >>> 6;
+		for (int i = 0; i < word && i < formats.length; i++) {
+			rank += Long.bitCount(formats[i]);
+		}
+		if (word < formats.length) {
+			rank += Long.bitCount(formats[word] & ((1L << index) - 1));
+		}
+		return rank;
 	}
 
 	public final void addFormat(String format) {
-		this.formats.add(format);
+		addFormat(format, -1);
 	}
 
-	// two targets are considered equal if they have the same URL
+	/**
+	 * @param format
+	 * @param size
+	 *            size of the stream of the format in bytes, negative if
+	 *            unknown, in which case a size known before is kept
+	 */
+	public final void addFormat(String format, long size) {
+		int index = FormatDictionary.intern(format);
+		boolean added = !hasFormat(index);
+		int word = index >>> 6;
+		if (formats == null) {
+			formats = new long[word + 1];
+		} else if (word >= formats.length) {
+			long[] copy = new long[word + 1];
+			System.arraycopy(formats, 0, copy, 0, formats.length);
+			formats = copy;
+		}
+		formats[word] |= 1L << index;
+		int rank = rank(index);
+		if (added && sizes != null) {
+			long[] copy = new long[sizes.length + 1];
+			System.arraycopy(sizes, 0, copy, 0, rank);
+			copy[rank] = -1;
+			System.arraycopy(sizes, rank, copy, rank + 1, sizes.length - rank);
+			sizes = copy;
+		}
+		if (size >= 0) {
+			if (sizes == null) {
+				sizes = new long[getFormats().size()];
+				Arrays.fill(sizes, -1);
+			}
+			sizes[rank] = size;
+		}
+	}
+
+	/**
+	 * @param format
+	 * @return size of the stream of the given format in bytes, or -1 if it is
+	 *         unknown
+	 */
+	public final long getSize(String format) {
+		int index = FormatDictionary.find(format);
+		if (sizes == null || index < 0 || !hasFormat(index)) {
+			return -1;
+		}
+		return sizes[rank(index)];
+	}
+
+	/**
+	 * @return size of the largest known stream in bytes, or -1 if no size is
+	 *         known
+	 */
+	public final long getLargestSize() {
+		long largest = -1;
+		if (sizes != null) {
+			for (long size : sizes) {
+				largest = Math.max(largest, size);
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * @return known sizes of streams in bytes by their formats, or null if no
+	 *         size is known
+	 */
+	public final Map<String, Long> getSizes() {
+		if (sizes == null) {
+			return null;
+		}
+		Map<String, Long> map = new LinkedHashMap<String, Long>();
+		int rank = 0;
+		for (int index = nextFormat(0); index >= 0; index = nextFormat(index + 1)) {
+			if (sizes[rank] >= 0) {
+				map.put(FormatDictionary.get(index), sizes[rank]);
+			}
+			rank++;
+		}
+		return map;
+	}
+
+	// two targets are considered equal if they have the same canonical URL
 	@Override
 	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
 		if (o instanceof Target) {
-			return url.toString().equals(((Target) o).getUrl().toString());
+			Target other = (Target) o;
+			return hash == other.hash && url.equals(other.url);
 		}
 		return false;
 	}
 
 	@Override
 	public int hashCode() {
-		return url.toString().hashCode();
+		return hash;
 	}
 
 }
@@ -0,0 +1,86 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * It reads and writes a target list file, a Json array of targets with their
+ * URLs, titles and formats, one target at a time, so that no more than a
+ * target is held in memory besides the list itself however long the list is.
+ *
+ * A list is written into a temporary file next to the list file first, which
+ * is then moved over the list file, so a crash while writing never leaves a
+ * broken list file behind.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class TargetListFile {
+	private static final TargetTypeAdapter ADAPTER = new TargetTypeAdapter();
+
+	private TargetListFile() {
+	}
+
+	/**
+	 * Read all targets in the given file into the given collection.
+	 *
+	 * @param filename
+	 * @param targets
+	 *            the collection to add the targets to
+	 * @return false if there is no such file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws JsonParseException
+	 *             if the file is not a valid target list, targets read before
+	 *             the error have been added
+	 */
+	public static final boolean read(String filename, Collection<Target> targets) throws IOException {
+		File file = new File(filename);
+		if (!file.isFile()) {
+			return false;
+		}
+		try (JsonReader reader = new JsonReader(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8))) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				targets.add(ADAPTER.read(reader));
+			}
+			reader.endArray();
+		} catch (IllegalStateException e) {
+			throw new JsonParseException(e);
+		}
+		return true;
+	}
+
+	/**
+	 * Write the given targets into the given file, replacing it as a whole.
+	 *
+	 * @param filename
+	 * @param targets
+	 * @throws IOException
+	 *             if the file cannot be written, the file is left as it was
+	 */
+	public static final void write(String filename, final Collection<Target> targets) throws IOException {
+		Helper.writeAtomically(new File(filename), new Helper.Content() {
+			@Override
+			public void writeTo(Writer out) throws IOException {
+				JsonWriter writer = new JsonWriter(out);
+				writer.beginArray();
+				for (Target target : targets) {
+					ADAPTER.write(writer, target);
+				}
+				writer.endArray();
+				writer.flush();
+			}
+		});
+	}
+
+}
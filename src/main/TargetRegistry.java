@@ -0,0 +1,169 @@
+package main;
+
+import java.net.MalformedURLException;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The target list. It is a set of targets in the order they have been added,
+ * and each target gets an id when it is added, which stays the same until it
+ * is removed, so ids shown to the user do not change when other targets are
+ * removed.
+ *
+ * A target can be looked up by its id or by its URL, and removed by its id,
+ * in constant time. Ids are never reused until the list is cleared.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class TargetRegistry extends AbstractSet<Target> {
+	// ids increase in the order of adding, so this is also the list order
+	private final Map<Integer, Target> targets = new LinkedHashMap<Integer, Target>();
+	private final Map<Target, Integer> ids = new HashMap<Target, Integer>();
+	private int nextId = 1;
+
+	@Override
+	public boolean add(Target target) {
+		if (ids.containsKey(target)) {
+			return false;
+		}
+		int id = nextId++;
+		targets.put(id, target);
+		ids.put(target, id);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return ids.containsKey(o);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		Integer id = ids.remove(o);
+		if (id == null) {
+			return false;
+		}
+		targets.remove(id);
+		return true;
+	}
+
+	@Override
+	public int size() {
+		return targets.size();
+	}
+
+	@Override
+	public void clear() {
+		targets.clear();
+		ids.clear();
+		nextId = 1;
+	}
+
+	@Override
+	public Iterator<Target> iterator() {
+		final Iterator<Target> it = targets.values().iterator();
+		return new Iterator<Target>() {
+			private Target last;
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Target next() {
+				last = it.next();
+				return last;
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+				ids.remove(last);
+			}
+		};
+	}
+
+	/**
+	 * @param target
+	 * @return the id of the given target, or 0 if it is not in the list
+	 */
+	public final int getId(Target target) {
+		Integer id = ids.get(target);
+		return id == null ? 0 : id;
+	}
+
+	/**
+	 * @param id
+	 * @return the target of the given id, or null if there is none
+	 */
+	public final Target get(int id) {
+		return targets.get(id);
+	}
+
+	/**
+	 * @param url
+	 * @return the target of the given URL, or null if there is none
+	 * @throws MalformedURLException
+	 */
+	public final Target get(String url) throws MalformedURLException {
+		Integer id = ids.get(new Target(url));
+		return id == null ? null : targets.get(id);
+	}
+
+	/**
+	 * @param id
+	 * @return the removed target, or null if there is no target of the id
+	 */
+	public final Target removeById(int id) {
+		Target target = targets.remove(id);
+		if (target != null) {
+			ids.remove(target);
+		}
+		return target;
+	}
+
+	/**
+	 * Remove all targets whose ids are within the given range. It only looks
+	 * at ids which have been given out, so a huge range costs no more than
+	 * the list itself.
+	 *
+	 * @param from
+	 *            the first id, inclusive
+	 * @param to
+	 *            the last id, inclusive
+	 * @return removed targets in the list order
+	 */
+	public final List<Target> removeRange(int from, int to) {
+		List<Target> removed = new ArrayList<Target>();
+		from = Math.max(1, from);
+		to = Math.min(nextId - 1, to);
+		if ((long) to - from + 1 > targets.size()) {
+			Iterator<Map.Entry<Integer, Target>> it = targets.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Integer, Target> entry = it.next();
+				if (entry.getKey() >= from && entry.getKey() <= to) {
+					it.remove();
+					ids.remove(entry.getValue());
+					removed.add(entry.getValue());
+				}
+			}
+		} else {
+			for (int id = from; id <= to; id++) {
+				Target target = removeById(id);
+				if (target != null) {
+					removed.add(target);
+				}
+			}
+		}
+		return removed;
+	}
+
+}
@@ -0,0 +1,77 @@
+package main;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A target store keeps the target list on disk.
+ *
+ * A store may persist the list only when it is saved as a whole, or also
+ * write each change of the list as it happens, so the list on disk is always
+ * up to date without rewriting it.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public interface TargetStore {
+
+	/**
+	 * @return true if there is a stored list
+	 */
+	boolean exists();
+
+	/**
+	 * Read all stored targets into the given collection.
+	 *
+	 * @param targets
+	 * @return false if there is no stored list
+	 * @throws IOException
+	 * @throws com.google.gson.JsonParseException
+	 *             if the stored list is invalid
+	 */
+	boolean load(Collection<Target> targets) throws IOException;
+
+	/**
+	 * Replace the stored list with the given targets.
+	 *
+	 * @param targets
+	 * @throws IOException
+	 *             if failed to write, the stored list is left as it was
+	 */
+	void save(Collection<Target> targets) throws IOException;
+
+	/**
+	 * A target has been added into the list.
+	 *
+	 * @param target
+	 */
+	void add(Target target);
+
+	/**
+	 * A target has been removed from the list.
+	 *
+	 * @param target
+	 */
+	void remove(Target target);
+
+	/**
+	 * The title or formats of a target in the list have been updated.
+	 *
+	 * @param target
+	 */
+	void update(Target target);
+
+	/**
+	 * All targets have been removed from the list.
+	 */
+	void removeAll();
+
+	/**
+	 * Remove the stored list.
+	 */
+	void delete();
+
+	void close();
+
+}
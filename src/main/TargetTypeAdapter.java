@@ -0,0 +1,116 @@
+package main;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * It reads and writes a Target as a Json object of its URL, its title if
+ * there is one, an array of its formats, and the sizes of its formats in
+ * bytes if any is known, e.g.
+ *
+ * <pre>
+ * {"url":"https://...","title":"...","formats":["mp4hd","flv"],"sizes":{"mp4hd":1048576}}
+ * </pre>
+ *
+ * Other names are skipped when reading.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class TargetTypeAdapter extends TypeAdapter<Target> {
+
+	@Override
+	public void write(JsonWriter writer, Target target) throws IOException {
+		if (target == null) {
+			writer.nullValue();
+			return;
+		}
+		writer.beginObject();
+		writer.name("url").value(target.getUrlString());
+		if (target.getTitle() != null) {
+			writer.name("title").value(target.getTitle());
+		}
+		writer.name("formats").beginArray();
+		for (String format : target.getFormats()) {
+			writer.value(format);
+		}
+		writer.endArray();
+		Map<String, Long> sizes = target.getSizes();
+		if (sizes != null) {
+			writer.name("sizes").beginObject();
+			for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+				writer.name(entry.getKey()).value(entry.getValue());
+			}
+			writer.endObject();
+		}
+		writer.endObject();
+	}
+
+	/**
+	 * @throws JsonParseException
+	 *             if there is no valid URL
+	 */
+	@Override
+	public Target read(JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		String url = null;
+		String title = null;
+		List<String> formats = new ArrayList<String>();
+		Map<String, Long> sizes = new HashMap<String, Long>();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+			} else if (name.equals("url")) {
+				url = reader.nextString();
+			} else if (name.equals("title")) {
+				title = reader.nextString();
+			} else if (name.equals("formats")) {
+				reader.beginArray();
+				while (reader.hasNext()) {
+					formats.add(reader.nextString());
+				}
+				reader.endArray();
+			} else if (name.equals("sizes")) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					sizes.put(reader.nextName(), reader.nextLong());
+				}
+				reader.endObject();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (url == null) {
+			throw new JsonParseException("A target without URL at " + reader.getPath());
+		}
+		Target target;
+		try {
+			target = new Target(url, title);
+		} catch (MalformedURLException e) {
+			throw new JsonParseException(e);
+		}
+		for (String format : formats) {
+			Long size = sizes.get(format);
+			target.addFormat(format, size != null ? size : -1);
+		}
+		return target;
+	}
+
+}
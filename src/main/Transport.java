@@ -0,0 +1,85 @@
+package main;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * A transport runs You-Get with the given command line arguments on behalf of
+ * a YouGet task and gives back what it has printed.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public interface Transport {
+
+	/**
+	 * Start running You-Get with the given arguments.
+	 *
+	 * @param arguments
+	 *            command line arguments, not including the executable
+	 * @param output
+	 *            how the output of You-Get is handled
+	 * @return the started job
+	 * @throws IOException
+	 *             if failed to run You-Get
+	 * @throws InterruptedException
+	 */
+	Job start(List<String> arguments, Output output) throws IOException, InterruptedException;
+
+	/**
+	 * How the output of a job is handled. A transport collecting the whole
+	 * output by nature may treat both of them as collecting everything.
+	 */
+	static enum Output {
+		// stdout is not collected and has to be read through
+		// Job.getOutputReader() by the caller before waiting for the job, only
+		// the tail of stderr is collected
+		STREAM,
+		// nothing is read while the job is running, stdout and stderr are
+		// sent elsewhere and only the tail of stderr is read if asked for
+		REDIRECT;
+	}
+
+	/**
+	 * Release everything held by this transport. It can not be used any more
+	 * afterwards.
+	 */
+	void close();
+
+	/**
+	 * A single run of You-Get started by a transport.
+	 */
+	interface Job {
+
+		/**
+		 * Wait for the job to finish.
+		 *
+		 * @return the exit value of You-Get, 0 means success
+		 * @throws InterruptedException
+		 */
+		int waitFor() throws InterruptedException;
+
+		/**
+		 * @return everything You-Get printed to stdout if the transport
+		 *         collects it by nature, otherwise null
+		 */
+		String getOutput();
+
+		/**
+		 * Only available if the job was started to stream its output. The
+		 * reader has to be read to the end or closed by the caller.
+		 *
+		 * @return a reader of stdout of You-Get as it is printed
+		 */
+		Reader getOutputReader();
+
+		/**
+		 * @return everything You-Get printed to stderr or its tail
+		 */
+		String getError();
+
+	}
+
+}
@@ -0,0 +1,144 @@
+package main;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * It turns the URL of a target into a canonical form, so that the same video
+ * reached through a short link, a mobile host or a URL with extra tracking
+ * parameters becomes the same target.
+ *
+ * For every URL, the scheme and host are lower cased, an explicit default
+ * port and the fragment are dropped, and well-known tracking parameters are
+ * removed from the query. Known sites have their own rules on top of that:
+ * short links are expanded, mobile and bare hosts are mapped to the main
+ * host, https is used, and only the query parameters which choose the video
+ * are kept, sorted by name.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class UrlCanonicalizer {
+	private static final Set<String> TRACKING_PARAMETERS = new HashSet<String>(Arrays.asList("fbclid", "gclid",
+			"dclid", "msclkid", "igshid", "mc_cid", "mc_eid", "ref_src", "spm_id_from", "vd_source", "share_source",
+			"share_medium", "share_plat", "share_from"));
+	private static final String[] MOBILE_PREFIXES = { "m.", "mobile.", "www." };
+	// rules of known sites by their bare host
+	private static final Map<String, Rule> RULES = new HashMap<String, Rule>();
+
+	static {
+		addRule(new Rule("youtube.com", "www.youtube.com", "v", "list"));
+		addRule(new Rule("bilibili.com", "www.bilibili.com", "p"));
+		addRule(new Rule("v.youku.com", "v.youku.com"));
+		addRule(new Rule("vimeo.com", "vimeo.com"));
+	}
+
+	private static final class Rule {
+		private final String bareHost;
+		private final String host;
+		// query parameters kept, all others are dropped
+		private final Set<String> parameters;
+
+		Rule(String bareHost, String host, String... parameters) {
+			this.bareHost = bareHost;
+			this.host = host;
+			this.parameters = new HashSet<String>(Arrays.asList(parameters));
+		}
+	}
+
+	private UrlCanonicalizer() {
+	}
+
+	private static void addRule(Rule rule) {
+		RULES.put(rule.bareHost, rule);
+	}
+
+	/**
+	 * Find the rule of the given host, with any mobile prefix removed.
+	 */
+	private static Rule findRule(String host) {
+		Rule rule = RULES.get(host);
+		for (int i = 0; rule == null && i < MOBILE_PREFIXES.length; i++) {
+			if (host.startsWith(MOBILE_PREFIXES[i])) {
+				rule = RULES.get(host.substring(MOBILE_PREFIXES[i].length()));
+			}
+		}
+		return rule;
+	}
+
+	/**
+	 * @param url
+	 * @return the canonical form of the given URL
+	 */
+	public static final String canonicalize(URL url) {
+		String protocol = url.getProtocol().toLowerCase();
+		String host = url.getHost().toLowerCase();
+		int port = url.getPort() == url.getDefaultPort() ? -1 : url.getPort();
+		String path = url.getPath();
+		String query = url.getQuery();
+		if (host.equals("youtu.be") && path.length() > 1) {
+			query = "v=" + path.substring(1) + (query == null ? "" : "&" + query);
+			host = "www.youtube.com";
+			path = "/watch";
+		}
+		Rule rule = findRule(host);
+		if (rule != null) {
+			protocol = "https";
+			host = rule.host;
+			port = -1;
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(protocol).append("://");
+		if (url.getUserInfo() != null) {
+			sb.append(url.getUserInfo()).append('@');
+		}
+		sb.append(host);
+		if (port != -1) {
+			sb.append(':').append(port);
+		}
+		sb.append(path);
+		if (query != null) {
+			query = filterQuery(query, rule);
+			if (!query.isEmpty()) {
+				sb.append('?').append(query);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Drop parameters not kept by the given rule, or tracking parameters if
+	 * there is no rule.
+	 */
+	private static String filterQuery(String query, Rule rule) {
+		List<String> kept = new ArrayList<String>();
+		for (String parameter : query.split("&")) {
+			if (parameter.isEmpty()) {
+				continue;
+			}
+			int equals = parameter.indexOf('=');
+			String name = equals < 0 ? parameter : parameter.substring(0, equals);
+			if (rule != null ? rule.parameters.contains(name)
+					: !name.startsWith("utm_") && !TRACKING_PARAMETERS.contains(name)) {
+				kept.add(parameter);
+			}
+		}
+		if (rule != null) {
+			Collections.sort(kept);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String parameter : kept) {
+			sb.append(sb.length() == 0 ? "" : "&").append(parameter);
+		}
+		return sb.toString();
+	}
+
+}
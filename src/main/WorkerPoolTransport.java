@@ -0,0 +1,288 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * This transport keeps a pool of long-lived Python worker processes which
+ * import You-Get once and then run jobs sent to them, so no process has to be
+ * started for each job.
+ *
+ * The protocol is line-delimited Json over stdin and stdout of a worker. A job
+ * is sent as {"id": 1, "op": "run", "args": [...]} and answered with {"id": 1,
+ * "exit": 0, "out": "...", "err": "..."}. A health check is sent as {"id": 2,
+ * "op": "ping"} and answered with {"id": 2, "pong": true}. Both directions use
+ * UTF-8.
+ *
+ * A worker idle for longer than HEALTH_CHECK_INTERVAL is pinged before it is
+ * given a new job, and a worker is replaced by a new one after it has run
+ * maxJobs number of jobs or once it stops answering properly.
+ *
+ * Every request has a deadline, PING_TIMEOUT for a health check and
+ * jobTimeout for a job. A worker which has not answered by then is killed by
+ * a watchdog, so a hung worker never holds its task forever, and the request
+ * fails as if the worker had exited.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public final class WorkerPoolTransport implements Transport {
+	private static final long HEALTH_CHECK_INTERVAL = 30000;
+	private static final long PING_TIMEOUT = 5000;
+	// kills workers which have not answered in time
+	private static final ScheduledExecutorService watchdog = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "worker-watchdog");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	private final List<String> command;
+	private final int maxJobs;
+	private final long jobTimeout;
+	private final Semaphore available;
+	private final ConcurrentLinkedDeque<Worker> idle = new ConcurrentLinkedDeque<Worker>();
+	private volatile boolean closed = false;
+
+	private static final class CompletedJob implements Job {
+		private final int exitValue;
+		private final String output;
+		private final String error;
+
+		CompletedJob(int exitValue, String output, String error) {
+			this.exitValue = exitValue;
+			this.output = output;
+			this.error = error;
+		}
+
+		@Override
+		public int waitFor() {
+			return exitValue;
+		}
+
+		@Override
+		public String getOutput() {
+			return output;
+		}
+
+		@Override
+		public Reader getOutputReader() {
+			return new StringReader(output);
+		}
+
+		@Override
+		public String getError() {
+			return error;
+		}
+
+	}
+
+	private final class Worker {
+		private final Process process;
+		private final BufferedWriter writer;
+		private final BufferedReader reader;
+		private long nextId = 0;
+		private int jobs = 0;
+		private long lastUsed = System.currentTimeMillis();
+
+		Worker() throws IOException {
+			ProcessBuilder pb = new ProcessBuilder(command);
+			pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+			Map<String, String> env = pb.environment();
+			env.put("LC_CTYPE", "en_US.UTF-8");
+			env.put("PYTHONIOENCODING", "utf-8");
+			process = pb.start();
+			writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "UTF8"));
+			reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF8"));
+		}
+
+		/**
+		 * Send a request and wait for the answer to it. The worker is killed
+		 * if it has not answered within the given time.
+		 *
+		 * @param request
+		 * @param timeout
+		 *            milliseconds to wait for the answer
+		 * @return the answer
+		 * @throws IOException
+		 *             if the worker has gone, has not answered in time or the
+		 *             answer is not valid
+		 */
+		JsonObject call(JsonObject request, final long timeout) throws IOException {
+			long id = ++nextId;
+			request.addProperty("id", id);
+			final AtomicBoolean expired = new AtomicBoolean(false);
+			ScheduledFuture<?> kill = watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					expired.set(true);
+					process.destroyForcibly();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+			String line;
+			try {
+				writer.write(Helper.gson.toJson(request));
+				writer.newLine();
+				writer.flush();
+				line = reader.readLine();
+			} catch (IOException e) {
+				if (expired.get()) {
+					throw new IOException("Worker has not answered in " + timeout + " ms.", e);
+				}
+				throw e;
+			} finally {
+				kill.cancel(false);
+			}
+			lastUsed = System.currentTimeMillis();
+			if (expired.get()) {
+				throw new IOException("Worker has not answered in " + timeout + " ms.");
+			} else if (line == null) {
+				throw new IOException("Worker has exited.");
+			}
+			try {
+				JsonObject response = Helper.jsonParser.parse(line).getAsJsonObject();
+				if (response.get("id").getAsLong() != id) {
+					throw new IOException("Worker answered a different request.");
+				}
+				return response;
+			} catch (JsonParseException | IllegalStateException | NullPointerException e) {
+				throw new IOException("Invalid answer from worker: " + line, e);
+			}
+		}
+
+		boolean isHealthy() {
+			if (!process.isAlive()) {
+				return false;
+			}
+			JsonObject request = new JsonObject();
+			request.addProperty("op", "ping");
+			try {
+				return call(request, PING_TIMEOUT).has("pong");
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		void destroy() {
+			process.destroy();
+		}
+
+	}
+
+	/**
+	 * @param command
+	 *            command to start a worker, e.g. python
+	 *            worker/you_get_worker.py
+	 * @param size
+	 *            maximum number of workers, at least 1
+	 * @param maxJobs
+	 *            number of jobs run by a worker before it is replaced, at
+	 *            least 1
+	 * @param jobTimeout
+	 *            milliseconds a job may take before its worker is killed
+	 */
+	public WorkerPoolTransport(List<String> command, int size, int maxJobs, long jobTimeout) {
+		this.command = new ArrayList<String>(command);
+		this.available = new Semaphore(Math.max(1, size));
+		this.maxJobs = Math.max(1, maxJobs);
+		this.jobTimeout = jobTimeout;
+	}
+
+	/**
+	 * The job is run before this method returns, so the returned job has
+	 * already finished and its output is always collected by the worker.
+	 */
+	@Override
+	public Job start(List<String> arguments, Output output) throws IOException, InterruptedException {
+		if (closed) {
+			throw new IOException("Worker pool has been closed.");
+		}
+		JsonObject request = new JsonObject();
+		request.addProperty("op", "run");
+		JsonArray args = new JsonArray();
+		for (String argument : arguments) {
+			args.add(argument);
+		}
+		request.add("args", args);
+
+		available.acquire();
+		Worker worker = null;
+		try {
+			worker = borrow();
+			JsonObject response = worker.call(request, jobTimeout);
+			worker.jobs++;
+			Job job = new CompletedJob(response.get("exit").getAsInt(), response.get("out").getAsString(),
+					response.get("err").getAsString());
+			giveBack(worker);
+			worker = null;
+			return job;
+		} catch (IllegalStateException | NullPointerException e) {
+			throw new IOException("Invalid answer from worker.", e);
+		} finally {
+			if (worker != null) {
+				// broken in the middle of a job
+				worker.destroy();
+			}
+			available.release();
+		}
+	}
+
+	/**
+	 * Take an idle worker which is still healthy or start a new one.
+	 *
+	 * @return a worker ready for a new job
+	 * @throws IOException
+	 *             if failed to start a new worker
+	 */
+	private Worker borrow() throws IOException {
+		Worker worker;
+		while ((worker = idle.pollFirst()) != null) {
+			if (System.currentTimeMillis() - worker.lastUsed < HEALTH_CHECK_INTERVAL || worker.isHealthy()) {
+				return worker;
+			}
+			worker.destroy();
+		}
+		return new Worker();
+	}
+
+	private void giveBack(Worker worker) {
+		if (closed || worker.jobs >= maxJobs) {
+			worker.destroy();
+		} else {
+			idle.offerFirst(worker);
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		Worker worker;
+		while ((worker = idle.pollFirst()) != null) {
+			worker.destroy();
+		}
+	}
+
+}
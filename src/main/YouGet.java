@@ -2,34 +2,60 @@ package main;
 
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Set;
-import java.util.Map;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterReader;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Each instance of this class represents a You-Get process.
+ * Each instance of this class represents a You-Get process. It is a task to be
+ * run by an executor, normally through a Scheduler.
  * 
  * @author Zhen Chen
  *
  */
 
-public class YouGet extends Thread {
-	private static final int MAX_ATTEMPTS = 3;
+public class YouGet implements Runnable {
+	// prefix of the names of staging folders
+	static final String STAGING_PREFIX = ".staging-";
 	private static String executable;
 	// charset of the output of YouGet process, platform dependent
 	private static String charset;
+	// how You-Get is run, a new process for each task by default
+	private static Transport transport = new ProcessTransport();
+	// how the output of DOWNLOAD tasks is handled, either parsed for progress
+	// as it streams out, or REDIRECT
+	private static Transport.Output downloadOutput = Transport.Output.STREAM;
+	// running tasks by the work they do, shared by tasks doing the same
+	private static final SingleFlight<String, Target> flights = new SingleFlight<String, Target>();
+	// info fetched in earlier sessions, null if not used
+	private static MetadataCache metadataCache;
+	// told about updated titles and formats of targets, null if not used
+	private static TargetStore targetStore;
 	private Target target;
+	// all targets of a batched INFO task, null for a task of a single target
+	private List<Target> batch;
 	private Task task;
 	private String url;
 	private String path;
+	// root folder the staging folder in path is renamed into after the title
+	// once downloaded, null if path is the final folder
+	private String stagingRoot;
 	private String preferredFormat;
 	private boolean forceWrite;
 	private boolean success;
+	// number of times it has been run
+	private int attempts;
+	// how the last run failed and why, null if it has succeeded
+	private Failure failure;
+	private Exception exception;
+	// 1 if the last run ended with a ProcessErrorException, otherwise 0
+	private int processErrors;
 
 	public static enum Task {
 		INFO, DOWNLOAD;
@@ -70,6 +96,38 @@ public class YouGet extends Thread {
 		YouGet.charset = charset;
 	}
 
+	public static final Transport getTransport() {
+		return transport;
+	}
+
+	public static final void setTransport(Transport transport) {
+		YouGet.transport = transport;
+	}
+
+	public static final Transport.Output getDownloadOutput() {
+		return downloadOutput;
+	}
+
+	public static final void setDownloadOutput(Transport.Output downloadOutput) {
+		YouGet.downloadOutput = downloadOutput;
+	}
+
+	public static final MetadataCache getMetadataCache() {
+		return metadataCache;
+	}
+
+	public static final void setMetadataCache(MetadataCache metadataCache) {
+		YouGet.metadataCache = metadataCache;
+	}
+
+	public static final TargetStore getTargetStore() {
+		return targetStore;
+	}
+
+	public static final void setTargetStore(TargetStore targetStore) {
+		YouGet.targetStore = targetStore;
+	}
+
 	public YouGet(Target target, Task task) {
 		setTarget(target);
 		setTask(task);
@@ -84,6 +142,19 @@ public class YouGet extends Thread {
 		setForceWrite(forceWrite);
 	}
 
+	/**
+	 * Construct an INFO task fetching the info of all given targets through
+	 * one YouGet process, saving the startup cost of a process for each of
+	 * them. The first target is treated as the target of this task.
+	 * 
+	 * @param batch
+	 *            a non-empty list of targets
+	 */
+	public YouGet(List<Target> batch) {
+		this(batch.get(0), Task.INFO);
+		this.batch = new ArrayList<Target>(batch);
+	}
+
 	public final Target getTarget() {
 		return target;
 	}
@@ -106,7 +177,7 @@ public class YouGet extends Thread {
 	}
 
 	private final void setUrl(Target target) {
-		this.url = target.getUrl().toString();
+		this.url = target.getUrlString();
 	}
 
 	public final String getPath() {
@@ -121,6 +192,19 @@ public class YouGet extends Thread {
 		}
 	}
 
+	/**
+	 * Download into a staging folder under the given root named by the hash of
+	 * the URL instead of the path, and rename it after the title printed by
+	 * YouGet once downloaded, so no INFO task is needed for the title.
+	 * 
+	 * @param root
+	 *            root folder ending with a slash
+	 */
+	public final void setStaging(String root) {
+		this.stagingRoot = root;
+		setPath(root + STAGING_PREFIX + UUID.nameUUIDFromBytes(url.getBytes(StandardCharsets.UTF_8)));
+	}
+
 	public final String getPreferredFormat() {
 		return preferredFormat;
 	}
@@ -129,6 +213,18 @@ public class YouGet extends Thread {
 		this.preferredFormat = preferredFormat;
 	}
 
+	/**
+	 * @return expected size in bytes of the download, the size of the
+	 *         preferred format if there is one or otherwise the largest one,
+	 *         -1 if it is unknown
+	 */
+	public final long getExpectedSize() {
+		if (preferredFormat != null && !preferredFormat.equals("")) {
+			return target.getSize(preferredFormat);
+		}
+		return target.getLargestSize();
+	}
+
 	public final boolean getForceWrite() {
 		return forceWrite;
 	}
@@ -141,58 +237,219 @@ public class YouGet extends Thread {
 		return success;
 	}
 
+	public final int getProcessErrors() {
+		return processErrors;
+	}
+
+	public final int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * @return how the last run failed, or null if it has succeeded
+	 */
+	public final Failure getFailure() {
+		return failure;
+	}
+
 	/**
-	 * Only MAX_ATTEMPTS number of running times are allowed. If there is a
-	 * major exception happened, stop with no more attempts.
+	 * Each run is a single attempt. A failed run is classified into a Failure,
+	 * so that the Scheduler can decide whether to run it again later instead
+	 * of retrying it here and holding its slot.
 	 * 
 	 * If there is no task set, the running will be considered as a success.
 	 */
 	@Override
 	public void run() {
+		long begin = System.nanoTime();
+		attempts++;
 		success = false;
-		if (executable == null) {
-			System.err.println("You must call setExecutable(String path, boolean portable) method before run it!");
+		failure = null;
+		exception = null;
+		processErrors = 0;
+		try {
+			perform();
+			success = true;
+		} catch (IOException e) {
+			failure = Failure.classify(e);
+			exception = e;
+		} catch (InterruptedException e) {
+			// the run is being stopped, no point in trying again
+			failure = Failure.PERMANENT;
+			exception = e;
+			Thread.currentThread().interrupt();
+		} catch (ProcessErrorException e) {
+			failure = e.getFailure();
+			exception = e;
+			processErrors++;
+		}
+		String label = getTaskLabel();
+		Metrics.observe("youget_task_seconds", System.nanoTime() - begin, "task", label);
+		Metrics.count("youget_attempts_total", 1, "task", label, "result",
+				success ? "success" : failure.name().toLowerCase());
+	}
+
+	/**
+	 * Run the task. A single INFO or DOWNLOAD task shares the process of a
+	 * running task of the same canonical URL and arguments, if there is one,
+	 * instead of starting its own. An INFO task sharing the process of
+	 * another one takes the title and formats from its target.
+	 */
+	private void perform() throws ProcessErrorException, IOException, InterruptedException {
+		if (batch != null) {
+			infoBatch();
 			return;
 		}
-		for (int failedAttempts = 0; failedAttempts < MAX_ATTEMPTS; failedAttempts++) {
-			try {
-				switch (task) {
-				case INFO:
-					info();
-					break;
-				case DOWNLOAD:
-					download();
-					break;
-				}
-				success = true;
-				break;
-			} catch (IOException e) {
-				synchronized (Controller.printLock) {
-					e.printStackTrace();
-				}
-				break;
-			} catch (InterruptedException e) {
-				if (failedAttempts == MAX_ATTEMPTS - 1) {
-					// only print error message when failed MAX_ATTEMPTS times
-					synchronized (Controller.printLock) {
-						e.printStackTrace();
+		Target done;
+		try {
+			done = flights.execute(getFlightKey(), new Callable<Target>() {
+				@Override
+				public Target call() throws Exception {
+					if (task == Task.INFO) {
+						info();
+					} else {
+						download();
 					}
+					return target;
 				}
-			} catch (ProcessErrorException e) {
-				if (failedAttempts == MAX_ATTEMPTS - 1) {
-					// only print error message when failed MAX_ATTEMPTS times
-					synchronized (Controller.printLock) {
-						System.err.println(e.getMessage());
+			});
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ProcessErrorException) {
+				throw (ProcessErrorException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof InterruptedException) {
+				throw (InterruptedException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+		if (done != target && task == Task.INFO) {
+			target.setTitle(done.getTitle());
+			for (String format : done.getFormats()) {
+				target.addFormat(format, done.getSize(format));
+			}
+		}
+	}
+
+	/**
+	 * @return the key of tasks doing the same work
+	 */
+	private final String getFlightKey() {
+		if (task == Task.INFO) {
+			return "INFO " + url;
+		}
+		return "DOWNLOAD " + url + " " + path + " " + preferredFormat + " " + forceWrite;
+	}
+
+	/**
+	 * Show the user why the last run has failed. Targets left by a batch are
+	 * fetched again alone, so failures of a batch are not shown.
+	 */
+	final void printFailure() {
+		if (exception == null || batch != null) {
+			return;
+		}
+		synchronized (Controller.printLock) {
+			if (exception instanceof ProcessErrorException) {
+				System.err.println(exception.getMessage());
+			} else {
+				exception.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return the name of the task of this instance used in metrics
+	 */
+	final String getTaskLabel() {
+		if (batch != null) {
+			return "INFO_BATCH";
+		}
+		return task.name();
+	}
+
+	/**
+	 * Start a job through the transport and record how long it takes to start.
+	 * For a transport running the job before returning, it is the time of the
+	 * whole job.
+	 */
+	private Transport.Job startJob(List<String> arguments, Transport.Output output)
+			throws IOException, InterruptedException {
+		long begin = System.nanoTime();
+		Transport.Job job = transport.start(arguments, output);
+		Metrics.observe("youget_spawn_seconds", System.nanoTime() - begin, "task", getTaskLabel());
+		if (output == Transport.Output.STREAM) {
+			// reading it may only start after the job has been returned
+			job = new FirstOutputTimedJob(job, begin, getTaskLabel());
+		}
+		return job;
+	}
+
+	/**
+	 * Wait for the job and record its exit value.
+	 */
+	private int waitForJob(Transport.Job job) throws InterruptedException {
+		int exitValue = job.waitFor();
+		Metrics.count("youget_exit_codes_total", 1, "task", getTaskLabel(), "code", Integer.toString(exitValue));
+		return exitValue;
+	}
+
+	/**
+	 * A job whose output reader records the time from the start of the job to
+	 * its first output.
+	 */
+	private static final class FirstOutputTimedJob implements Transport.Job {
+		private final Transport.Job job;
+		private final long begin;
+		private final String label;
+
+		FirstOutputTimedJob(Transport.Job job, long begin, String label) {
+			this.job = job;
+			this.begin = begin;
+			this.label = label;
+		}
+
+		@Override
+		public int waitFor() throws InterruptedException {
+			return job.waitFor();
+		}
+
+		@Override
+		public String getOutput() {
+			return job.getOutput();
+		}
+
+		@Override
+		public Reader getOutputReader() {
+			return new FilterReader(job.getOutputReader()) {
+				private boolean first = true;
+
+				@Override
+				public int read(char[] buffer, int offset, int length) throws IOException {
+					int count = super.read(buffer, offset, length);
+					if (first && count > 0) {
+						first = false;
+						Metrics.observe("youget_first_output_seconds", System.nanoTime() - begin, "task", label);
 					}
+					return count;
 				}
-			}
+			};
+		}
+
+		@Override
+		public String getError() {
+			return job.getError();
 		}
 	}
 
 	/**
 	 * It will run the YouGet program to get the info of the target URL if it
-	 * has not been fetched yet. It will update the title of the target using
-	 * the returned Json data.
+	 * has not been fetched yet and there is no valid info in the metadata
+	 * cache. It will update the title of the target using the returned Json
+	 * data.
 	 * 
 	 * It needs a user specified charset to read the output of the YouGet
 	 * program correctly.
@@ -201,34 +458,139 @@ public class YouGet extends Thread {
 	 *             if YouGet failed to get info of the target
 	 * @throws IOException
 	 *             if failed to access or run the program, or if the specified
-	 *             charset for ProcessReader is invalid
+	 *             charset for ProcessReader is invalid, or if the transport
+	 *             failed to run YouGet
 	 * @throws InterruptedException
 	 */
 	private void info() throws ProcessErrorException, IOException, InterruptedException {
-		if (target.getTitle() != null) {
+		if (target.getTitle() != null || isCached(target)) {
 			return;
 		}
-		List<String> command = new ArrayList<String>();
-		command.add(executable);
-		command.add("--json");
-		command.add("\"" + url + "\"");
-		Process p = startProcess(command);
-		ProcessReader pr = readProcess(p);
-		p.waitFor();
-		if (p.exitValue() != 0) {
-			throw new ProcessErrorException(pr.getError());
+		List<String> arguments = new ArrayList<String>();
+		arguments.add("--json");
+		arguments.add("\"" + url + "\"");
+		Transport.Job job = startJob(arguments, Transport.Output.STREAM);
+		InfoReader.Info info = null;
+		try (InfoReader reader = new InfoReader(job.getOutputReader())) {
+			info = reader.next();
+		} catch (IOException | RuntimeException e) {
+			// invalid output, reported below unless the process has failed
+		}
+		int exitValue = waitForJob(job);
+		if (exitValue != 0) {
+			throw new ProcessErrorException(exitValue, job.getError());
+		} else if (info == null || info.getTitle() == null) {
+			throw new ProcessErrorException("Invalid info of " + url);
 		} else {
-			JsonObject jo = Helper.jsonParser.parse(pr.getOutput()).getAsJsonObject();
-			target.setTitle(jo.get("title").getAsString());
-			Set<Map.Entry<String, JsonElement>> formats = jo.getAsJsonObject("streams").entrySet();
-			for (Map.Entry<String, JsonElement> format : formats) {
-				target.addFormat(format.getKey());
+			update(target, info);
+		}
+	}
+
+	/**
+	 * It will run one YouGet program with the URLs of all targets in the batch
+	 * whose info has not been fetched yet. The Json data printed for each URL
+	 * is matched back to its target by the URL in it, or by the order of the
+	 * URLs if there is no such URL.
+	 * 
+	 * If the program fails part way, the targets already printed keep their
+	 * info and the first target left is dropped from the batch, as it is most
+	 * likely the one stopping the program. Therefore a retry only runs the
+	 * remaining URLs, and the dropped targets are left to single INFO tasks.
+	 * 
+	 * @throws ProcessErrorException
+	 *             if YouGet failed to get info of any target in the batch
+	 * @throws IOException
+	 *             if failed to access or run the program, or if the specified
+	 *             charset for ProcessReader is invalid, or if the transport
+	 *             failed to run YouGet
+	 * @throws InterruptedException
+	 */
+	private void infoBatch() throws ProcessErrorException, IOException, InterruptedException {
+		List<Target> pending = new ArrayList<Target>();
+		for (Target t : batch) {
+			if (t.getTitle() == null && !isCached(t)) {
+				pending.add(t);
 			}
 		}
+		if (pending.isEmpty()) {
+			return;
+		}
+		List<String> arguments = new ArrayList<String>();
+		arguments.add("--json");
+		for (Target t : pending) {
+			arguments.add("\"" + t.getUrlString() + "\"");
+		}
+		Transport.Job job = startJob(arguments, Transport.Output.STREAM);
+		int next = 0;
+		try (InfoReader reader = new InfoReader(job.getOutputReader())) {
+			InfoReader.Info info;
+			while (next < pending.size() && (info = reader.next()) != null) {
+				if (info.getTitle() == null) {
+					continue;
+				}
+				int index = next;
+				if (info.getUrl() != null) {
+					for (int i = next; i < pending.size(); i++) {
+						if (pending.get(i).getUrlString().equals(info.getUrl())) {
+							index = i;
+							break;
+						}
+					}
+				}
+				update(pending.get(index), info);
+				next = index + 1;
+			}
+		} catch (IOException | RuntimeException e) {
+			// output cut short by a failure, keep what has been parsed
+		}
+		int exitValue = waitForJob(job);
+		for (Target t : pending) {
+			if (t.getTitle() == null) {
+				batch.remove(t);
+				throw new ProcessErrorException(exitValue, job.getError());
+			}
+		}
+	}
+
+	private static boolean isCached(Target target) {
+		if (metadataCache != null && metadataCache.apply(target)) {
+			if (targetStore != null) {
+				targetStore.update(target);
+			}
+			return true;
+		}
+		return false;
 	}
 
 	/**
-	 * It will run the YouGet program to download the target URL.
+	 * Update the title and formats of the given target using the info read
+	 * from the Json data printed by YouGet for it, and store them into the
+	 * metadata cache and the target store.
+	 * 
+	 * @param target
+	 * @param info
+	 */
+	private static void update(Target target, InfoReader.Info info) {
+		target.setTitle(info.getTitle());
+		for (int i = 0; i < info.getFormats().size(); i++) {
+			target.addFormat(info.getFormats().get(i), info.getSizes().get(i));
+		}
+		if (metadataCache != null) {
+			metadataCache.put(target);
+		}
+		if (targetStore != null) {
+			targetStore.update(target);
+		}
+	}
+
+	/**
+	 * It will run the YouGet program to download the target URL. Unless the
+	 * output is redirected, the progress printed by the program is parsed as
+	 * it streams out and published to the progress listeners.
+	 * 
+	 * A download into a staging folder always streams the output, takes the
+	 * title and the chosen stream from it, and then renames the folder after
+	 * the title.
 	 * 
 	 * It needs a user specified charset to read the output of the YouGet
 	 * program correctly.
@@ -237,45 +599,76 @@ public class YouGet extends Thread {
 	 *             if YouGet failed in downloading the target
 	 * @throws IOException
 	 *             if failed to access or run the program, or if the specified
-	 *             charset for ProcessReader is invalid
+	 *             charset for ProcessReader is invalid, or if the transport
+	 *             failed to run YouGet
 	 * @throws InterruptedException
 	 */
 	private void download() throws ProcessErrorException, IOException, InterruptedException {
-		List<String> command = new ArrayList<String>();
-		command.add(executable);
-		command.add("-o");
-		command.add("\"" + path + "\"");
+		List<String> arguments = new ArrayList<String>();
+		arguments.add("-o");
+		arguments.add("\"" + path + "\"");
 		if (preferredFormat != null && !preferredFormat.equals("")) {
-			command.add("-F");
-			command.add(preferredFormat);
+			arguments.add("-F");
+			arguments.add(preferredFormat);
 		}
 		if (forceWrite) {
-			command.add("-f");
+			arguments.add("-f");
 		}
-		command.add("\"" + url + "\"");
-		Process p = startProcess(command);
-		ProcessReader pr = readProcess(p);
-		p.waitFor();
-		if (p.exitValue() != 0) {
-			throw new ProcessErrorException(pr.getError());
+		arguments.add("\"" + url + "\"");
+		Transport.Job job;
+		ProgressParser parser = null;
+		if (downloadOutput == Transport.Output.REDIRECT && stagingRoot == null) {
+			job = startJob(arguments, downloadOutput);
+		} else {
+			job = startJob(arguments, Transport.Output.STREAM);
+			parser = new ProgressParser(target, Controller.getProgressListeners());
+			try (Reader reader = job.getOutputReader()) {
+				parser.consume(reader);
+			}
+		}
+		int exitValue = waitForJob(job);
+		if (exitValue != 0) {
+			throw new ProcessErrorException(exitValue, job.getError());
+		}
+		if (stagingRoot != null) {
+			unstage(parser);
 		}
 	}
 
-	private Process startProcess(List<String> command) throws IOException {
-		ProcessBuilder pb = new ProcessBuilder(command);
-		Map<String, String> env = pb.environment();
-		env.put("LC_CTYPE", "en_US.UTF-8");
-		return pb.start();
-	}
-
-	private ProcessReader readProcess(Process p) throws UnsupportedEncodingException {
-		ProcessReader pr;
-		if (charset == null) {
-			pr = new ProcessReader(p);
+	/**
+	 * Rename the staging folder after the title parsed from the output of the
+	 * download, and update the target with the title and the chosen stream.
+	 * 
+	 * @param parser
+	 *            the parser which has consumed the output
+	 * @throws ProcessErrorException
+	 *             if there is no title in the output
+	 * @throws IOException
+	 *             if failed to rename the folder
+	 */
+	private void unstage(ProgressParser parser) throws ProcessErrorException, IOException {
+		String title = parser.getTitle();
+		if (title == null) {
+			throw new ProcessErrorException("No title of " + url + " in the output");
+		}
+		// get rid of invalid characters in the folder name
+		String folder = stagingRoot + title.replaceAll(Controller.INVALID_DIRECTORY_CHARACTER_PATTERN, "");
+		File staging = new File(path);
+		if (staging.exists()) {
+			Helper.moveFolder(staging, new File(folder));
 		} else {
-			pr = new ProcessReader(p, charset);
+			// nothing has been written
+			new File(folder).mkdirs();
+		}
+		setPath(folder);
+		stagingRoot = null;
+		target.setTitle(title);
+		if (parser.getStream() != null) {
+			target.addFormat(parser.getStream());
+		}
+		if (targetStore != null) {
+			targetStore.update(target);
 		}
-		return pr;
 	}
 
 }
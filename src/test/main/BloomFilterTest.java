@@ -0,0 +1,52 @@
+package main;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of false negatives and the false positive rate of BloomFilter.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class BloomFilterTest {
+
+	@Test
+	public void neverGivesFalseNegatives() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put("https://vimeo.com/" + i);
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertTrue(filter.mightContain("https://vimeo.com/" + i));
+		}
+	}
+
+	@Test
+	public void keepsFalsePositivesNearTheWantedRate() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i = 0; i < 10000; i++) {
+			filter.put("https://vimeo.com/" + i);
+		}
+		int positives = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (filter.mightContain("https://www.youtube.com/watch?v=" + i)) {
+				positives++;
+			}
+		}
+		assertTrue(positives + " false positives", positives < 2000);
+	}
+
+	@Test
+	public void startsEmpty() {
+		BloomFilter filter = new BloomFilter(1, 0.01);
+		assertFalse(filter.mightContain(""));
+		assertFalse(filter.mightContain("https://vimeo.com/1"));
+		filter.put("");
+		assertTrue(filter.mightContain(""));
+	}
+
+}
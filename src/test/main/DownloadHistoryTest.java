@@ -0,0 +1,147 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of lookups, merging and recovery of DownloadHistory.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class DownloadHistoryTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private File file;
+	private File pending;
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "history.log");
+		pending = new File(file.getPath() + ".pending");
+	}
+
+	private static Target target(int i) throws MalformedURLException {
+		return new Target("https://vimeo.com/" + i);
+	}
+
+	private DownloadHistory load() throws IOException {
+		DownloadHistory history = new DownloadHistory(file.getPath());
+		history.load();
+		return history;
+	}
+
+	@Test
+	public void findsEntriesAcrossIndexBlocks() throws IOException {
+		DownloadHistory history = load();
+		for (int i = 0; i < 1000; i += 2) {
+			history.add(target(i), "/videos/" + i);
+		}
+		history.save();
+
+		history = load();
+		assertEquals(500, history.size());
+		for (int i = 0; i < 1000; i++) {
+			DownloadHistory.Entry entry = history.get(target(i));
+			if (i % 2 == 0) {
+				assertNotNull(entry);
+				assertEquals("/videos/" + i, entry.getPath());
+			} else {
+				assertNull(entry);
+			}
+		}
+	}
+
+	@Test
+	public void mergesNewEntriesInOrder() throws IOException {
+		DownloadHistory history = load();
+		history.add(target(3), "/a");
+		history.add(target(1), "/b");
+		history.save();
+		history.add(target(2), "/c");
+		// downloaded again
+		history.add(target(3), "/d");
+		assertEquals("/d", history.get(target(3)).getPath());
+		history.save();
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0).startsWith("https://vimeo.com/1\t/b\t"));
+		assertTrue(lines.get(1).startsWith("https://vimeo.com/2\t/c\t"));
+		assertTrue(lines.get(2).startsWith("https://vimeo.com/3\t/d\t"));
+		assertEquals("/d", load().get(target(3)).getPath());
+	}
+
+	@Test
+	public void keepsEntriesNotSavedBeforeCrash() throws IOException {
+		DownloadHistory history = load();
+		history.add(target(1), "/a");
+		history.save();
+		history.add(target(2), "/b");
+		assertTrue(pending.isFile());
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(pending, true), StandardCharsets.UTF_8)) {
+			writer.write("https://vimeo.com/3\t/c");
+		}
+
+		history = load();
+		assertEquals(2, history.size());
+		assertEquals("/a", history.get(target(1)).getPath());
+		assertEquals("/b", history.get(target(2)).getPath());
+		assertNull(history.get(target(3)));
+
+		history.add(target(4), "/d");
+		history.save();
+		assertFalse(pending.exists());
+		history = load();
+		assertEquals(3, history.size());
+		assertEquals("/d", history.get(target(4)).getPath());
+	}
+
+	@Test
+	public void cleansPathsOfSeparators() throws IOException {
+		DownloadHistory history = load();
+		history.add(target(1), "/a\tb\nc");
+		history.save();
+		assertEquals("/a b c", load().get(target(1)).getPath());
+	}
+
+	@Test
+	public void readsPathsOfAnyCharacters() throws IOException {
+		DownloadHistory history = load();
+		for (int i = 0; i < 100; i++) {
+			history.add(target(i), "/视频/" + i + "/ü");
+		}
+		history.save();
+		history = load();
+		for (int i = 0; i < 100; i++) {
+			assertEquals("/视频/" + i + "/ü", history.get(target(i)).getPath());
+		}
+	}
+
+	@Test
+	public void isEmptyWithoutFile() throws IOException {
+		DownloadHistory history = load();
+		assertEquals(0, history.size());
+		assertNull(history.get(target(1)));
+	}
+
+}
@@ -0,0 +1,45 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests of the classification of failed You-Get processes by Failure.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class FailureTest {
+
+	@Test
+	public void classifiesByError() {
+		assertEquals(Failure.THROTTLED, Failure.classify(1, "urllib.error.HTTPError: HTTP Error 429: Too Many Requests"));
+		assertEquals(Failure.PERMANENT, Failure.classify(1, "urllib.error.HTTPError: HTTP Error 404: Not Found"));
+		assertEquals(Failure.TRANSIENT, Failure.classify(1, "ConnectionResetError: Connection reset by peer"));
+		assertEquals(Failure.TRANSIENT, Failure.classify(1, "socket.timeout: timed out"));
+	}
+
+	@Test
+	public void throttlingWinsOverOtherErrors() {
+		assertEquals(Failure.THROTTLED, Failure.classify(1, "HTTP Error 503: rate limit exceeded"));
+	}
+
+	@Test
+	public void classifiesByExitValueWithoutKnownError() {
+		assertEquals(Failure.PERMANENT, Failure.classify(2, "usage: you-get [OPTION]... URL..."));
+		assertEquals(Failure.TRANSIENT, Failure.classify(1, null));
+		assertEquals(Failure.TRANSIENT, Failure.classify(-9, ""));
+	}
+
+	@Test
+	public void classifiesTransportErrors() {
+		assertEquals(Failure.PERMANENT, Failure.classify(new FileNotFoundException("you-get")));
+		assertEquals(Failure.TRANSIENT, Failure.classify(new IOException("Worker has died.")));
+	}
+
+}
@@ -0,0 +1,149 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of replaying, appending to and compacting a Journal.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class JournalTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private File file;
+	private Target a;
+	private Target b;
+
+	@Before
+	public void setUp() throws IOException {
+		file = new File(folder.getRoot(), "journal.log");
+		a = new Target("https://vimeo.com/1");
+		b = new Target("https://vimeo.com/2");
+	}
+
+	private void appendRaw(String s) throws IOException {
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+			writer.write(s);
+		}
+	}
+
+	@Test
+	public void replaysLatestStateOfEachTarget() {
+		Journal journal = new Journal(file.getPath());
+		journal.record(a, Journal.State.QUEUED);
+		journal.record(b, Journal.State.QUEUED);
+		journal.record(a, Journal.State.DOWNLOADING);
+		journal.record(a, Journal.State.DONE);
+		journal.record(b, Journal.State.FAILED);
+		journal.close();
+
+		Journal replayed = new Journal(file.getPath());
+		assertTrue(replayed.replay());
+		assertEquals(Journal.State.DONE, replayed.getState(a));
+		assertEquals(Journal.State.FAILED, replayed.getState(b));
+		List<Target> unfinished = replayed.getUnfinished();
+		assertEquals(1, unfinished.size());
+		assertEquals(b, unfinished.get(0));
+	}
+
+	@Test
+	public void keepsInfoOfLaterRecords() {
+		a.setTitle("Title");
+		a.addFormat("mp4hd", 1000);
+		a.addFormat("flv", -1);
+		Journal journal = new Journal(file.getPath());
+		journal.record(a, Journal.State.INFO_DONE);
+		journal.record(a, Journal.State.DOWNLOADING);
+		journal.close();
+
+		Journal replayed = new Journal(file.getPath());
+		replayed.replay();
+		assertEquals(Journal.State.DOWNLOADING, replayed.getState(a));
+		Target target = replayed.getUnfinished().get(0);
+		assertEquals("Title", target.getTitle());
+		assertEquals(a.getFormats(), target.getFormats());
+		assertEquals(1000, target.getSize("mp4hd"));
+		assertEquals(-1, target.getSize("flv"));
+	}
+
+	@Test
+	public void ignoresLineCutShortByCrash() throws IOException {
+		Journal journal = new Journal(file.getPath());
+		journal.record(a, Journal.State.QUEUED);
+		journal.close();
+		appendRaw("{\"url\":\"https://vimeo.com/2\",\"sta");
+
+		Journal replayed = new Journal(file.getPath());
+		assertTrue(replayed.replay());
+		assertEquals(Journal.State.QUEUED, replayed.getState(a));
+		assertNull(replayed.getState(b));
+
+		// the cut line is dropped before new records are appended
+		replayed.record(b, Journal.State.DONE);
+		replayed.close();
+		assertEquals(2, Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size());
+		Journal again = new Journal(file.getPath());
+		again.replay();
+		assertEquals(Journal.State.DONE, again.getState(b));
+	}
+
+	@Test
+	public void compactsIntoLatestRecords() throws IOException {
+		Journal journal = new Journal(file.getPath());
+		journal.record(a, Journal.State.QUEUED);
+		journal.record(a, Journal.State.DOWNLOADING);
+		journal.record(b, Journal.State.QUEUED);
+		journal.compact();
+		journal.record(b, Journal.State.DONE);
+		journal.close();
+		assertEquals(3, Files.readAllLines(file.toPath()).size());
+
+		Journal replayed = new Journal(file.getPath());
+		replayed.replay();
+		assertEquals(Journal.State.DOWNLOADING, replayed.getState(a));
+		assertEquals(Journal.State.DONE, replayed.getState(b));
+	}
+
+	@Test
+	public void recordsDownloadingOnlyWhenDownloadIsDispatched() {
+		Journal journal = new Journal(file.getPath());
+		journal.record(a, Journal.State.QUEUED);
+		journal.onStarted(a);
+		journal.onTaskStarted(new YouGet(a, YouGet.Task.INFO));
+		assertEquals(Journal.State.QUEUED, journal.getState(a));
+		journal.onTaskStarted(new YouGet(a, YouGet.Task.DOWNLOAD, folder.getRoot().getPath(), null, false));
+		assertEquals(Journal.State.DOWNLOADING, journal.getState(a));
+		journal.onFinished(a, true);
+		assertEquals(Journal.State.DONE, journal.getState(a));
+		journal.close();
+	}
+
+	@Test
+	public void clearRemovesFile() {
+		Journal journal = new Journal(file.getPath());
+		journal.record(a, Journal.State.QUEUED);
+		journal.clear();
+		assertFalse(file.exists());
+		assertFalse(new Journal(file.getPath()).replay());
+	}
+
+}
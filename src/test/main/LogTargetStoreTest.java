@@ -0,0 +1,144 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of replaying and compacting the log of a LogTargetStore.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class LogTargetStoreTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private File file;
+
+	@Before
+	public void setUp() {
+		file = new File(folder.getRoot(), "targets.log");
+	}
+
+	private static Target target(int i) throws IOException {
+		return new Target("https://vimeo.com/" + i);
+	}
+
+	private List<Target> load() throws IOException {
+		LogTargetStore store = new LogTargetStore(file.getPath());
+		List<Target> targets = new ArrayList<Target>();
+		store.load(targets);
+		store.close();
+		return targets;
+	}
+
+	@Test
+	public void replaysChangesInOrder() throws IOException {
+		LogTargetStore store = new LogTargetStore(file.getPath());
+		assertFalse(store.exists());
+		store.add(target(1));
+		store.add(target(2));
+		store.add(target(3));
+		store.remove(target(2));
+		Target updated = target(3);
+		updated.setTitle("Three");
+		updated.addFormat("mp4", 300);
+		store.update(updated);
+		store.close();
+
+		List<Target> targets = load();
+		assertEquals(Arrays.asList(target(1), target(3)), targets);
+		assertEquals("Three", targets.get(1).getTitle());
+		assertEquals(300, targets.get(1).getSize("mp4"));
+	}
+
+	@Test
+	public void replaysClear() throws IOException {
+		LogTargetStore store = new LogTargetStore(file.getPath());
+		store.add(target(1));
+		store.removeAll();
+		store.add(target(2));
+		store.close();
+		assertEquals(Arrays.asList(target(2)), load());
+	}
+
+	@Test
+	public void ignoresLineCutShortByCrash() throws IOException {
+		LogTargetStore store = new LogTargetStore(file.getPath());
+		store.add(target(1));
+		store.close();
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+			writer.write("{\"op\":\"add\",\"url\":\"https://vim");
+		}
+		store = new LogTargetStore(file.getPath());
+		store.add(target(2));
+		store.close();
+		assertEquals(Arrays.asList(target(1), target(2)), load());
+	}
+
+	@Test
+	public void compactsDeadRecords() throws IOException {
+		LogTargetStore store = new LogTargetStore(file.getPath());
+		store.add(target(0));
+		for (int i = 1; i <= 1000; i++) {
+			store.add(target(i));
+			store.remove(target(i));
+		}
+		store.add(target(1001));
+		// waits for the compaction
+		store.close();
+
+		// 2002 records have been appended
+		assertTrue(Files.readAllLines(file.toPath()).size() < 2002);
+		assertFalse(new File(file.getPath() + ".old").exists());
+		assertEquals(Arrays.asList(target(0), target(1001)), load());
+	}
+
+	@Test
+	public void replaysLogLeftByCrashedCompaction() throws IOException {
+		LogTargetStore store = new LogTargetStore(file.getPath());
+		store.add(target(1));
+		store.add(target(2));
+		store.close();
+		assertTrue(file.renameTo(new File(file.getPath() + ".old")));
+		store = new LogTargetStore(file.getPath());
+		assertTrue(store.exists());
+		store.remove(target(1));
+		store.add(target(3));
+		store.close();
+
+		assertEquals(Arrays.asList(target(2), target(3)), load());
+		assertFalse(new File(file.getPath() + ".old").exists());
+		assertEquals(Arrays.asList(target(2), target(3)), load());
+	}
+
+	@Test
+	public void saveRewritesLog() throws IOException {
+		LogTargetStore store = new LogTargetStore(file.getPath());
+		store.add(target(1));
+		store.remove(target(1));
+		store.save(Arrays.asList(target(2), target(3)));
+		store.add(target(4));
+		store.close();
+		assertEquals(3, Files.readAllLines(file.toPath()).size());
+		assertEquals(Arrays.asList(target(2), target(3), target(4)), load());
+	}
+
+}
@@ -0,0 +1,95 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of ProgressParser on progress bars and headers printed by You-Get.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class ProgressParserTest {
+	private final List<double[]> updates = new ArrayList<double[]>();
+	private ProgressParser parser;
+
+	@Before
+	public void setUp() throws MalformedURLException {
+		ProgressListener listener = new ProgressListener() {
+			@Override
+			public void onStarted(Target target) {
+			}
+
+			@Override
+			public void onTaskStarted(YouGet task) {
+			}
+
+			@Override
+			public void onProgress(ProgressEvent event) {
+				updates.add(new double[] { event.getPercent(), event.getBytesDone(), event.getBytesTotal(),
+						event.getBytesPerSecond() });
+			}
+
+			@Override
+			public void onFinished(Target target, boolean success) {
+			}
+		};
+		parser = new ProgressParser(new Target("https://vimeo.com/1"), Collections.singletonList(listener));
+	}
+
+	@Test
+	public void parsesProgressBar() throws IOException {
+		parser.consume(new StringReader(" 45.3% ( 12.3/ 27.1MB) ├████──┤[1/1]    2 MB/s"));
+		assertEquals(1, updates.size());
+		double[] update = updates.get(0);
+		assertEquals(45.3, update[0], 1e-9);
+		assertEquals((long) (12.3 * 1024 * 1024), (long) update[1]);
+		assertEquals((long) (27.1 * 1024 * 1024), (long) update[2]);
+		assertEquals(2 * 1024 * 1024, (long) update[3]);
+	}
+
+	@Test
+	public void publishesEachRedraw() throws IOException {
+		parser.consume(new StringReader(" 10.0% ( 1.0/ 10.0MB) ├─┤[1/1]  1 MB/s\r 20.0% ( 2.0/ 10.0MB) ├─┤[1/1]  1 MB/s\r"));
+		assertEquals(2, updates.size());
+		assertEquals(20.0, updates.get(1)[0], 1e-9);
+	}
+
+	@Test
+	public void readsLinesSplitAcrossChunks() {
+		char[] chars = " 50.0% ( 5.0/ 10.0kB) ├─┤[1/1]  3 kB/s\n".toCharArray();
+		parser.feed(chars, 0, 10);
+		assertEquals(0, updates.size());
+		parser.feed(chars, 10, chars.length - 10);
+		assertEquals(1, updates.size());
+		assertEquals(5 * 1024, (long) updates.get(0)[1]);
+		assertEquals(3 * 1024, (long) updates.get(0)[3]);
+	}
+
+	@Test
+	public void keepsTitleAndStream() throws IOException {
+		parser.consume(new StringReader("site:    Vimeo\ntitle:   A video\nstream:\n    - format:        mp4hd\n"));
+		assertEquals("A video", parser.getTitle());
+		assertEquals("mp4hd", parser.getStream());
+		assertEquals(0, updates.size());
+	}
+
+	@Test
+	public void ignoresOtherLines() throws IOException {
+		parser.consume(new StringReader("Downloading A video.mp4 ...\n\nSkipping ./A video.mp4: file already exists\n"));
+		assertNull(parser.getTitle());
+		assertEquals(0, updates.size());
+	}
+
+}
@@ -0,0 +1,59 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the retry decisions and backoff delays of RetryPolicy.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class RetryPolicyTest {
+	private final RetryPolicy policy = new RetryPolicy(4);
+
+	private static void assertWithin(long min, long max, long delay) {
+		assertTrue(delay + " not in [" + min + ", " + max + "]", delay >= min && delay <= max);
+	}
+
+	@Test
+	public void neverRetriesPermanentFailures() {
+		assertEquals(-1, policy.getDelay(Failure.PERMANENT, 1));
+		assertEquals(-1, policy.getDelay(null, 1));
+	}
+
+	@Test
+	public void stopsAtMaxAttempts() {
+		assertTrue(policy.getDelay(Failure.TRANSIENT, 3) >= 0);
+		assertEquals(-1, policy.getDelay(Failure.TRANSIENT, 4));
+		assertEquals(-1, new RetryPolicy(0).getDelay(Failure.TRANSIENT, 1));
+	}
+
+	@Test
+	public void backsOffExponentiallyWithJitter() {
+		for (int i = 0; i < 100; i++) {
+			assertWithin(500, 1000, policy.getDelay(Failure.TRANSIENT, 1));
+			assertWithin(1000, 2000, policy.getDelay(Failure.TRANSIENT, 2));
+			assertWithin(2000, 4000, policy.getDelay(Failure.TRANSIENT, 3));
+		}
+	}
+
+	@Test
+	public void waitsLongerWhenThrottled() {
+		for (int i = 0; i < 100; i++) {
+			assertWithin(5000, 10000, policy.getDelay(Failure.THROTTLED, 1));
+		}
+	}
+
+	@Test
+	public void capsTheDelay() {
+		RetryPolicy patient = new RetryPolicy(100);
+		for (int i = 0; i < 100; i++) {
+			assertWithin(150000, 300000, patient.getDelay(Failure.THROTTLED, 50));
+		}
+	}
+
+}
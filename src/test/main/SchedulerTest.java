@@ -0,0 +1,286 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of Scheduler running tasks through a StubTransport: refilling slots,
+ * host limits, retries, pausing throttled hosts, follow-up tasks in a pool of
+ * their own, and the order of downloads.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class SchedulerTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	private Transport original;
+	private StubTransport stub;
+
+	@Before
+	public void setUp() {
+		original = YouGet.getTransport();
+		stub = new StubTransport(100);
+		YouGet.setTransport(stub);
+	}
+
+	@After
+	public void tearDown() {
+		YouGet.setTransport(original);
+	}
+
+	private static String url(String host, int i) {
+		return "https://" + host + "/" + i;
+	}
+
+	private YouGet download(String url) throws IOException {
+		return download(new Target(url));
+	}
+
+	private YouGet download(Target target) {
+		return new YouGet(target, YouGet.Task.DOWNLOAD, folder.getRoot().getPath(), null, false);
+	}
+
+	private StubTransport.Run find(String url, int nth) {
+		for (StubTransport.Run run : stub.getRuns()) {
+			if (run.url.equals(url) && nth-- == 0) {
+				return run;
+			}
+		}
+		throw new AssertionError(url + " has not run");
+	}
+
+	private boolean hasEnded(String url) {
+		for (StubTransport.Run run : stub.getRuns()) {
+			if (run.url.equals(url) && run.end >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void refillsSlotsWithoutBarrier() throws IOException {
+		stub.setDelay(url("vimeo.com", 0), 800);
+		List<YouGet> tasks = new ArrayList<YouGet>();
+		for (int i = 0; i < 5; i++) {
+			tasks.add(download(url("vimeo.com", i)));
+		}
+		assertTrue(new Scheduler(2, false, null).runAll(tasks).isEmpty());
+
+		assertEquals(2, stub.getMaxRunning("DOWNLOAD"));
+		// the short tasks have all gone through the other slot
+		assertTrue(find(url("vimeo.com", 4), 0).end < find(url("vimeo.com", 0), 0).end);
+	}
+
+	@Test
+	public void skipsTasksOfFullHosts() throws IOException {
+		Map<String, Integer> limits = new HashMap<String, Integer>();
+		limits.put("vimeo.com", 1);
+		List<YouGet> tasks = new ArrayList<YouGet>();
+		for (int i = 0; i < 3; i++) {
+			tasks.add(download(url("vimeo.com", i)));
+		}
+		tasks.add(download(url("example.com", 0)));
+		tasks.add(download(url("example.com", 1)));
+		assertTrue(new Scheduler(3, false, limits).runAll(tasks).isEmpty());
+
+		assertEquals(1, stub.getMaxRunning("vimeo.com"));
+		assertEquals(2, stub.getMaxRunning("example.com"));
+		assertTrue(find(url("example.com", 1), 0).start < find(url("vimeo.com", 1), 0).start);
+	}
+
+	@Test
+	public void retriesTransientFailureLaterWithoutHoldingSlot() throws IOException {
+		stub.fail(url("vimeo.com", 0), 1, "ConnectionResetError: Connection reset by peer");
+		List<YouGet> tasks = new ArrayList<YouGet>();
+		for (int i = 0; i < 3; i++) {
+			tasks.add(download(url("vimeo.com", i)));
+		}
+		assertTrue(new Scheduler(1, false, null).runAll(tasks).isEmpty());
+
+		List<String> order = new ArrayList<String>();
+		for (StubTransport.Run run : stub.getRuns()) {
+			order.add(run.url);
+		}
+		assertEquals(Arrays.asList(url("vimeo.com", 0), url("vimeo.com", 1), url("vimeo.com", 2), url("vimeo.com", 0)),
+				order);
+		assertEquals(2, tasks.get(0).getAttempts());
+		assertTrue(tasks.get(0).isSuccess());
+		// at least half of the first delay of RetryPolicy
+		assertTrue(find(url("vimeo.com", 0), 1).start - find(url("vimeo.com", 0), 0).end >= 450);
+	}
+
+	@Test
+	public void givesUpPermanentFailure() throws IOException {
+		stub.fail(url("vimeo.com", 0), 1, "urllib.error.HTTPError: HTTP Error 404: Not Found");
+		YouGet task = download(url("vimeo.com", 0));
+		Set<Target> failed = new Scheduler(1, false, null).runAll(Collections.singletonList(task));
+
+		assertEquals(Collections.singleton(task.getTarget()), failed);
+		assertEquals(1, stub.getRuns().size());
+		assertEquals(Failure.PERMANENT, task.getFailure());
+	}
+
+	@Test
+	public void pausesThrottledHost() throws Exception {
+		final List<YouGet> tasks = new ArrayList<YouGet>();
+		for (int i = 0; i < 5; i++) {
+			stub.fail(url("vimeo.com", i), 3, "HTTP Error 429: Too Many Requests");
+			tasks.add(download(url("vimeo.com", i)));
+		}
+		for (int i = 0; i < 3; i++) {
+			tasks.add(download(url("example.com", i)));
+		}
+		final Scheduler scheduler = new Scheduler(1, false, null);
+		final List<Set<Target>> result = new ArrayList<Set<Target>>();
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				result.add(scheduler.runAll(tasks));
+			}
+		});
+		thread.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!hasEnded(url("example.com", 2))) {
+			assertTrue("other hosts have not run", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+		Thread.sleep(300);
+		int throttled = 0;
+		for (StubTransport.Run run : stub.getRuns()) {
+			if (run.host.equals("vimeo.com")) {
+				throttled++;
+			}
+		}
+		// paused after the third throttled task in a row, retries included
+		assertEquals(3, throttled);
+
+		thread.interrupt();
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertEquals(5, result.get(0).size());
+	}
+
+	@Test
+	public void pipelinesDownloadsAfterInfoInPoolOfTheirOwn() throws IOException {
+		stub.setDelay("INFO", 100);
+		stub.setDelay("DOWNLOAD", 300);
+		final AtomicInteger started = new AtomicInteger();
+		final AtomicInteger tasksStarted = new AtomicInteger();
+		final AtomicInteger finished = new AtomicInteger();
+		ProgressListener listener = new ProgressListener() {
+			@Override
+			public void onStarted(Target target) {
+				started.incrementAndGet();
+			}
+
+			@Override
+			public void onTaskStarted(YouGet task) {
+				tasksStarted.incrementAndGet();
+			}
+
+			@Override
+			public void onProgress(ProgressEvent event) {
+			}
+
+			@Override
+			public void onFinished(Target target, boolean success) {
+				if (success) {
+					finished.incrementAndGet();
+				}
+			}
+		};
+		List<YouGet> tasks = new ArrayList<YouGet>();
+		for (int i = 0; i < 4; i++) {
+			tasks.add(new YouGet(new Target(url("vimeo.com", i)), YouGet.Task.INFO));
+		}
+		Scheduler scheduler = new Scheduler(1, false, null);
+		scheduler.setPoolLimit(YouGet.Task.INFO, 2);
+		scheduler.setFollowUp(new Scheduler.FollowUp() {
+			@Override
+			public YouGet next(YouGet yg) {
+				return yg.getTask() == YouGet.Task.INFO ? download(yg.getTarget()) : null;
+			}
+		});
+		Controller.addProgressListener(listener);
+		try {
+			assertTrue(scheduler.runAll(tasks).isEmpty());
+		} finally {
+			Controller.removeProgressListener(listener);
+		}
+
+		assertEquals(2, stub.getMaxRunning("INFO"));
+		assertEquals(1, stub.getMaxRunning("DOWNLOAD"));
+		// the first download does not wait for the info of all targets
+		long firstDownload = Long.MAX_VALUE;
+		long lastInfo = 0;
+		for (StubTransport.Run run : stub.getRuns()) {
+			if (run.task.equals("DOWNLOAD")) {
+				firstDownload = Math.min(firstDownload, run.start);
+			} else {
+				lastInfo = Math.max(lastInfo, run.end);
+			}
+		}
+		assertTrue(firstDownload < lastInfo);
+		assertEquals("Title of " + url("vimeo.com", 0), tasks.get(0).getTarget().getTitle());
+		assertEquals(4, started.get());
+		assertEquals(8, tasksStarted.get());
+		assertEquals(4, finished.get());
+	}
+
+	private List<Long> runInOrder(Scheduler.Order order) throws IOException {
+		long[] sizes = { 5, -1, 50, 20, 1 };
+		List<YouGet> tasks = new ArrayList<YouGet>();
+		for (int i = 0; i < sizes.length; i++) {
+			Target target = new Target(url("vimeo.com", i));
+			target.addFormat("mp4", sizes[i]);
+			tasks.add(download(target));
+		}
+		Scheduler scheduler = new Scheduler(1, false, null);
+		scheduler.setOrder(order);
+		assertTrue(scheduler.runAll(tasks).isEmpty());
+		List<Long> started = new ArrayList<Long>();
+		for (StubTransport.Run run : stub.getRuns()) {
+			started.add(sizes[Integer.parseInt(run.url.substring(run.url.lastIndexOf('/') + 1))]);
+		}
+		return started;
+	}
+
+	@Test
+	public void startsDownloadsInListOrder() throws IOException {
+		stub.setDelay("DOWNLOAD", 10);
+		assertEquals(Arrays.asList(5L, -1L, 50L, 20L, 1L), runInOrder(Scheduler.Order.FIFO));
+	}
+
+	@Test
+	public void startsLargestDownloadsFirst() throws IOException {
+		stub.setDelay("DOWNLOAD", 10);
+		assertEquals(Arrays.asList(50L, 20L, 5L, 1L, -1L), runInOrder(Scheduler.Order.LONGEST_FIRST));
+	}
+
+	@Test
+	public void startsSmallestDownloadsFirst() throws IOException {
+		stub.setDelay("DOWNLOAD", 10);
+		assertEquals(Arrays.asList(1L, 5L, 20L, 50L, -1L), runInOrder(Scheduler.Order.SHORTEST_FIRST));
+	}
+
+}
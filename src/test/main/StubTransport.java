@@ -0,0 +1,180 @@
+package main;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Transport standing in for You-Get in tests. Each job takes a fixed time,
+ * INFO jobs print Json info with a single stream, and a URL can be made to
+ * fail a number of times first. It records when each job has run and how
+ * many jobs have been running at the same time.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+final class StubTransport implements Transport {
+	private final long millis;
+	private final long begin = System.nanoTime();
+	// by URL or by task name
+	private final Map<String, Long> delays = new HashMap<String, Long>();
+	private final Map<String, Long> sizes = new HashMap<String, Long>();
+	private final Map<String, Integer> failures = new HashMap<String, Integer>();
+	private final Map<String, String> errors = new HashMap<String, String>();
+	private final List<Run> runs = new ArrayList<Run>();
+	private final Map<String, Integer> running = new HashMap<String, Integer>();
+	private final Map<String, Integer> maxRunning = new HashMap<String, Integer>();
+
+	/**
+	 * A job which has been started.
+	 */
+	static final class Run {
+		final String task;
+		final String url;
+		final String host;
+		// milliseconds since the transport has been created
+		final long start;
+		volatile long end = -1;
+		volatile boolean success;
+
+		Run(String task, String url, String host, long start) {
+			this.task = task;
+			this.url = url;
+			this.host = host;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * @param millis
+	 *            time each job takes unless set for its URL
+	 */
+	StubTransport(long millis) {
+		this.millis = millis;
+	}
+
+	/**
+	 * @param key
+	 *            a URL, or a task name for all jobs of the task
+	 * @param millis
+	 */
+	synchronized void setDelay(String key, long millis) {
+		delays.put(key, millis);
+	}
+
+	synchronized void setSize(String url, long size) {
+		sizes.put(url, size);
+	}
+
+	/**
+	 * Make the next given number of jobs of the URL fail with the given error.
+	 */
+	synchronized void fail(String url, int times, String error) {
+		failures.put(url, times);
+		errors.put(url, error);
+	}
+
+	private long now() {
+		return (System.nanoTime() - begin) / 1000000;
+	}
+
+	/**
+	 * @return all jobs started so far in the order of their starts
+	 */
+	synchronized List<Run> getRuns() {
+		return new ArrayList<Run>(runs);
+	}
+
+	/**
+	 * @param key
+	 *            a task name or a host
+	 * @return the most jobs of it running at the same time
+	 */
+	synchronized int getMaxRunning(String key) {
+		Integer max = maxRunning.get(key);
+		return max == null ? 0 : max;
+	}
+
+	private void enter(String key, int delta) {
+		Integer n = running.get(key);
+		n = (n == null ? 0 : n) + delta;
+		running.put(key, n);
+		Integer max = maxRunning.get(key);
+		if (max == null || n > max) {
+			maxRunning.put(key, n);
+		}
+	}
+
+	@Override
+	public synchronized Job start(List<String> arguments, Output output) throws IOException {
+		String quoted = arguments.get(arguments.size() - 1);
+		final String url = quoted.substring(1, quoted.length() - 1);
+		final String task = arguments.get(0).equals("--json") ? "INFO" : "DOWNLOAD";
+		String host;
+		try {
+			host = new URL(url).getHost();
+		} catch (MalformedURLException e) {
+			throw new IOException(e);
+		}
+		final Run run = new Run(task, url, host, now());
+		runs.add(run);
+		enter(task, 1);
+		enter(host, 1);
+		Integer left = failures.get(url);
+		final boolean fails = left != null && left > 0;
+		if (fails) {
+			failures.put(url, left - 1);
+		}
+		final String error = fails ? errors.get(url) : "";
+		final long delay = delays.containsKey(url) ? delays.get(url)
+				: delays.containsKey(task) ? delays.get(task) : millis;
+		final Long size = sizes.get(url);
+		return new Job() {
+			@Override
+			public int waitFor() throws InterruptedException {
+				try {
+					Thread.sleep(delay);
+				} finally {
+					synchronized (StubTransport.this) {
+						enter(run.task, -1);
+						enter(run.host, -1);
+						run.success = !fails;
+						run.end = now();
+					}
+				}
+				return fails ? 1 : 0;
+			}
+
+			@Override
+			public String getOutput() {
+				return "";
+			}
+
+			@Override
+			public Reader getOutputReader() {
+				if (fails || !task.equals("INFO")) {
+					return new StringReader("");
+				}
+				return new StringReader("{\"url\": \"" + url + "\", \"title\": \"Title of " + url
+						+ "\", \"streams\": {\"mp4\": {\"size\": " + (size != null ? size : 1) + "}}}");
+			}
+
+			@Override
+			public String getError() {
+				return error;
+			}
+		};
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
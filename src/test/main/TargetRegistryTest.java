@@ -0,0 +1,101 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of ids, lookups and removals of TargetRegistry.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class TargetRegistryTest {
+	private TargetRegistry registry;
+	private final List<Target> targets = new ArrayList<Target>();
+
+	@Before
+	public void setUp() throws MalformedURLException {
+		registry = new TargetRegistry();
+		for (int i = 1; i <= 10; i++) {
+			Target target = new Target("https://vimeo.com/" + i);
+			targets.add(target);
+			assertTrue(registry.add(target));
+		}
+	}
+
+	@Test
+	public void givesIdsInOrderOfAdding() throws MalformedURLException {
+		assertFalse(registry.add(new Target("https://vimeo.com/1")));
+		assertEquals(10, registry.size());
+		assertEquals(targets, new ArrayList<Target>(registry));
+		assertEquals(3, registry.getId(targets.get(2)));
+		assertSame(targets.get(2), registry.get(3));
+		assertSame(targets.get(2), registry.get("https://vimeo.com/3"));
+		assertEquals(0, registry.getId(new Target("https://vimeo.com/11")));
+	}
+
+	@Test
+	public void keepsIdsAfterRemovals() {
+		assertSame(targets.get(1), registry.removeById(2));
+		assertNull(registry.removeById(2));
+		assertTrue(registry.remove(targets.get(4)));
+		assertEquals(4, registry.getId(targets.get(3)));
+		assertNull(registry.get(5));
+		assertEquals(8, registry.size());
+	}
+
+	@Test
+	public void neverReusesIdsUntilCleared() throws MalformedURLException {
+		registry.removeById(10);
+		Target target = new Target("https://vimeo.com/11");
+		registry.add(target);
+		assertEquals(11, registry.getId(target));
+		registry.clear();
+		assertTrue(registry.isEmpty());
+		registry.add(target);
+		assertEquals(1, registry.getId(target));
+	}
+
+	@Test
+	public void removesRangeInListOrder() {
+		registry.removeById(4);
+		assertEquals(Arrays.asList(targets.get(2), targets.get(4), targets.get(5)), registry.removeRange(3, 6));
+		assertEquals(6, registry.size());
+		assertFalse(registry.contains(targets.get(5)));
+		assertTrue(registry.contains(targets.get(6)));
+		assertEquals(Collections.emptyList(), registry.removeRange(3, 6));
+	}
+
+	@Test
+	public void removesHugeRangeByScanning() {
+		assertEquals(targets.subList(7, 10), registry.removeRange(8, Integer.MAX_VALUE));
+		assertEquals(targets.subList(0, 2), registry.removeRange(Integer.MIN_VALUE, 2));
+		assertEquals(targets.subList(2, 7), new ArrayList<Target>(registry));
+		assertEquals(Collections.emptyList(), registry.removeRange(7, 3));
+	}
+
+	@Test
+	public void iteratorRemovesFromIndex() {
+		Iterator<Target> it = registry.iterator();
+		it.next();
+		it.remove();
+		assertFalse(registry.contains(targets.get(0)));
+		assertEquals(0, registry.getId(targets.get(0)));
+		assertEquals(9, registry.size());
+	}
+
+}
@@ -0,0 +1,64 @@
+package main;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.junit.Test;
+
+/**
+ * Tests of the canonical forms given by UrlCanonicalizer.
+ *
+ * @author Zhen Chen
+ *
+ */
+
+public class UrlCanonicalizerTest {
+
+	private static String canonicalize(String url) throws MalformedURLException {
+		return UrlCanonicalizer.canonicalize(new URL(url));
+	}
+
+	@Test
+	public void normalizesAnyUrl() throws MalformedURLException {
+		assertEquals("http://example.com/a/B?x=1", canonicalize("HTTP://Example.COM:80/a/B?x=1#part"));
+		assertEquals("http://example.com:8080/a", canonicalize("http://example.com:8080/a"));
+		assertEquals("http://user@example.com/a", canonicalize("http://user@example.com/a"));
+	}
+
+	@Test
+	public void dropsTrackingParameters() throws MalformedURLException {
+		assertEquals("http://example.com/a?id=3&b=2",
+				canonicalize("http://example.com/a?utm_source=x&id=3&fbclid=abc&&b=2&utm_medium=y"));
+		assertEquals("http://example.com/a", canonicalize("http://example.com/a?gclid=1"));
+	}
+
+	@Test
+	public void expandsYouTubeShortLinks() throws MalformedURLException {
+		assertEquals("https://www.youtube.com/watch?v=abc", canonicalize("https://youtu.be/abc?t=30"));
+		assertEquals("https://www.youtube.com/watch?v=abc", canonicalize("http://youtu.be/abc"));
+	}
+
+	@Test
+	public void mapsHostsOfKnownSites() throws MalformedURLException {
+		assertEquals("https://www.youtube.com/watch?list=L&v=abc",
+				canonicalize("http://m.youtube.com/watch?v=abc&feature=share&list=L"));
+		assertEquals("https://www.youtube.com/watch?v=abc", canonicalize("https://youtube.com/watch?v=abc"));
+		assertEquals("https://www.bilibili.com/video/BV1?p=2",
+				canonicalize("https://m.bilibili.com/video/BV1?spm_id_from=333&p=2&vd_source=x"));
+		assertEquals("https://vimeo.com/123", canonicalize("http://www.vimeo.com:80/123?share=copy"));
+		assertEquals("https://v.youku.com/v_show/id_X.html", canonicalize("http://v.youku.com/v_show/id_X.html?f=1"));
+	}
+
+	@Test
+	public void leavesUnknownSubdomainsAlone() throws MalformedURLException {
+		assertEquals("http://music.youtube.com/watch?v=abc", canonicalize("http://music.youtube.com/watch?v=abc"));
+	}
+
+	@Test
+	public void makesEquivalentTargetsEqual() throws MalformedURLException {
+		assertEquals(new Target("https://youtu.be/abc"), new Target("https://m.youtube.com/watch?v=abc&utm_source=x"));
+	}
+
+}
@@ -0,0 +1,39 @@
+#!/usr/bin/env python3
+"""A stub worker speaking the same protocol as you_get_worker.py without
+You-Get or network access, for testing WorkerPoolTransport.
+
+A URL containing "fail" makes a job fail with exit value 1, and a URL
+containing "hang" makes the worker stop answering.
+"""
+
+import json
+import time
+
+from you_get_worker import serve
+
+
+def run(args):
+    urls = [a for a in args if '://' in a]
+    for url in urls:
+        if 'hang' in url:
+            time.sleep(3600)
+        if 'fail' in url:
+            return 1, '', 'you-get: [Failed] %s\n' % url
+    if '--json' in args:
+        out = ''
+        for url in urls:
+            out += json.dumps({
+                'url': url,
+                'title': 'Stub title of %s' % url,
+                'site': 'Stub',
+                'streams': {
+                    'hd': {'container': 'mp4', 'size': 2048},
+                    'sd': {'container': 'mp4', 'size': 1024},
+                },
+            }, indent=4) + '\n'
+        return 0, out, ''
+    return 0, ''.join('Downloading %s ...\n' % url for url in urls), ''
+
+
+if __name__ == '__main__':
+    serve(run)
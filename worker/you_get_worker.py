@@ -0,0 +1,87 @@
+#!/usr/bin/env python3
+"""A long-lived You-Get worker for WorkerPoolTransport.
+
+It imports You-Get once and then runs jobs read from stdin, one Json object
+per line, answering each of them with one Json object per line on stdout:
+
+    {"id": 1, "op": "run", "args": ["--json", "URL"]}
+    {"id": 1, "exit": 0, "out": "...", "err": "..."}
+
+    {"id": 2, "op": "ping"}
+    {"id": 2, "pong": true}
+
+Arguments wrapped in double quotes by YouGet are unwrapped before use.
+"""
+
+import contextlib
+import io
+import json
+import os
+import sys
+
+
+def unquote(argument):
+    if len(argument) >= 2 and argument[0] == '"' and argument[-1] == '"':
+        return argument[1:-1]
+    return argument
+
+
+def serve(run):
+    """Answer requests from stdin until it is closed.
+
+    run is called with the list of arguments of a job and returns a tuple of
+    (exit value, stdout, stderr).
+    """
+    # anything written to fd 1 by child programs such as ffmpeg must not get
+    # into the protocol, so the protocol keeps its own copy of stdout and fd 1
+    # is pointed at stderr
+    protocol = os.fdopen(os.dup(1), 'w', encoding='utf-8')
+    os.dup2(2, 1)
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+        request = json.loads(line)
+        response = {'id': request.get('id')}
+        if request.get('op') == 'ping':
+            response['pong'] = True
+        else:
+            code, out, err = run([unquote(a) for a in request.get('args', [])])
+            response.update({'exit': code, 'out': out, 'err': err})
+        protocol.write(json.dumps(response) + '\n')
+        protocol.flush()
+
+
+def main():
+    from you_get import common
+
+    # script_main only sets module globals for the options given, so they are
+    # put back to their initial values before each job
+    initial = {k: v for k, v in vars(common).items()
+               if isinstance(v, (bool, int, float, str, type(None)))}
+
+    def run(args):
+        vars(common).update(initial)
+        out = io.StringIO()
+        err = io.StringIO()
+        code = 0
+        sys.argv = ['you-get'] + args
+        with contextlib.redirect_stdout(out), contextlib.redirect_stderr(err):
+            try:
+                common.main()
+            except SystemExit as e:
+                if isinstance(e.code, int):
+                    code = e.code
+                elif e.code is not None:
+                    print(e.code, file=sys.stderr)
+                    code = 1
+            except Exception as e:
+                print('%s: %s' % (type(e).__name__, e), file=sys.stderr)
+                code = 1
+        return code, out.getvalue(), err.getvalue()
+
+    serve(run)
+
+
+if __name__ == '__main__':
+    main()